@@ -0,0 +1,15 @@
+package com.coara.whiteapp;
+
+final class AppItem {
+    volatile String appName;
+    final String packageName;
+    final boolean isSystem;
+    final boolean isDisabled;
+
+    AppItem(String appName, String packageName, boolean isSystem, boolean isDisabled) {
+        this.appName = appName;
+        this.packageName = packageName;
+        this.isSystem = isSystem;
+        this.isDisabled = isDisabled;
+    }
+}
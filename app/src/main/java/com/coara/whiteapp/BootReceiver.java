@@ -0,0 +1,21 @@
+package com.coara.whiteapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+public class BootReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) return;
+        final PendingResult result = goAsync();
+        WhitelistEngine engine = WhitelistEngine.get(context);
+        engine.scheduleReconcileJob();
+        engine.reconcileInBackground(new Runnable() {
+            @Override
+            public void run() {
+                result.finish();
+            }
+        });
+    }
+}
@@ -0,0 +1,71 @@
+package com.coara.whiteapp;
+
+import android.os.IBinder;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Reads the deviceidle whitelist over Binder through the hidden
+ * IDeviceIdleController interface, returning arrays instead of dumpsys text.
+ * Query-only: updates need DEVICE_POWER, which the app process does not hold,
+ * so FallbackWhitelistBackend sends them straight to the su shell. The
+ * except-idle list is not read: those packages are still restricted by Doze
+ * and must not be reported as exempt.
+ */
+final class DeviceIdleBinderBackend implements WhitelistBackend {
+    private final Object service;
+    private final Method system;
+    private final Method user;
+
+    private DeviceIdleBinderBackend(Object service) throws NoSuchMethodException {
+        Class<?> c = service.getClass();
+        this.service = service;
+        system = c.getMethod("getSystemPowerWhitelist");
+        user = c.getMethod("getUserPowerWhitelist");
+    }
+
+    static DeviceIdleBinderBackend create() {
+        try {
+            Class<?> sm = Class.forName("android.os.ServiceManager");
+            IBinder binder = (IBinder) sm.getMethod("getService", String.class).invoke(null, "deviceidle");
+            if (binder == null) return null;
+            Class<?> stub = Class.forName("android.os.IDeviceIdleController$Stub");
+            Object service = stub.getMethod("asInterface", IBinder.class).invoke(null, binder);
+            return service != null ? new DeviceIdleBinderBackend(service) : null;
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    @Override
+    public void query(Set<String> systemOut, Set<String> userOut) throws IOException {
+        addAll(systemOut, (String[]) invoke(system));
+        addAll(userOut, (String[]) invoke(user));
+    }
+
+    @Override
+    public void update(Collection<String> add, Collection<String> remove) throws IOException {
+        throw new IOException("deviceidle binder backend is query-only");
+    }
+
+    private Object invoke(Method m) throws IOException {
+        try {
+            return m.invoke(service);
+        } catch (InvocationTargetException e) {
+            throw new IOException(m.getName(), e.getCause());
+        } catch (Throwable t) {
+            throw new IOException(m.getName(), t);
+        }
+    }
+
+    private static void addAll(Set<String> out, String[] packages) {
+        if (packages == null) return;
+        for (String pkg : packages) {
+            if (WhitelistParser.isValidPackageName(pkg)) out.add(pkg);
+        }
+    }
+}
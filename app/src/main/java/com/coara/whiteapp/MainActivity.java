@@ -1,20 +1,24 @@
 package com.coara.whiteapp;
 
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
-import android.content.res.Resources;
-import android.os.AsyncTask;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.graphics.Color;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.CompoundButton;
+import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.Switch;
 import android.widget.TextView;
@@ -23,22 +27,15 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.app.AppCompatDelegate;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.DataOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -47,20 +44,129 @@ public class MainActivity extends AppCompatActivity {
 
     private Button systemAppListButton;
     private Button userAppListButton;
+    private LinearLayout bulkLayout;
+    private LinearLayout filterLayout;
+    private EditText searchField;
+    private Button filterModeButton;
+    private AppSearchIndex searchIndex;
+    private List<AppItem> indexedItems = new ArrayList<AppItem>();
+    private List<AppItem> shownItems = new ArrayList<AppItem>();
+    private int currentView = VIEW_USER;
+    private boolean packageReceiverRegistered = false;
+    private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getData() == null) return;
+            String action = intent.getAction();
+            boolean addOrRemove = Intent.ACTION_PACKAGE_ADDED.equals(action) || Intent.ACTION_PACKAGE_REMOVED.equals(action);
+            // An update also sends REMOVED and ADDED with EXTRA_REPLACING; PACKAGE_REPLACED alone covers it.
+            if (addOrRemove && intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) return;
+            String pkg = intent.getData().getSchemeSpecificPart();
+            if (pkg != null) engine.patchPackages(Collections.singletonList(pkg));
+        }
+    };
+    private int filterMode = AppSearchIndex.FILTER_ALL;
+    private int filterSeq = 0;
     private LinearLayout mainLayout;
     private RecyclerView appRecyclerView;
     private AppAdapter appAdapter;
-    private final List<AppItem> appItems = Collections.synchronizedList(new ArrayList<AppItem>());
-    private final Set<String> whitelistSet = Collections.synchronizedSet(new HashSet<String>());
-    private Handler syncHandler;
-    private Runnable syncRunnable;
-    private static final long SYNC_INTERVAL = 5000;
-    private static final String WHITELIST_FILE = "whitelist_sync.txt";
-    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
-    private SuShellManager suShell;
+    private boolean initialized = false;
+    private boolean loadRequested = false;
+    private static final int VIEW_SYSTEM = 0;
+    private static final int VIEW_USER = 1;
+    private static final int VIEW_CACHE_SIZE = 8;
+    private static final int PREALLOCATED_VIEW_HOLDERS = 16;
+    private final ExecutorService cpuExecutor = Executors.newSingleThreadExecutor();
+    private static final String TAG = "WhiteApp";
+    private static final int STARTUP_FIRST_FRAME = 0;
+    private static final int STARTUP_CACHED_LIST = 1;
+    private static final int STARTUP_ROOT_READY = 2;
+    private static final int STARTUP_LIVE_DATA = 3;
+    private static final String[] STARTUP_MARK_NAMES = {"first_frame", "cached_list", "root_ready", "live_data"};
+    private final long[] startupMarks = {-1, -1, -1, -1};
+    private long processStartAt;
+    private final Metrics metrics = Metrics.global();
+    private WhitelistEngine engine;
+    private final WhitelistEngine.Listener engineListener = new WhitelistEngine.Listener() {
+        @Override
+        public void onCachedState(boolean hasPackages) {
+            if (hasPackages && appRecyclerView == null) {
+                setupRecyclerView(itemsForView(engine.packages(), currentView));
+                markStartup(STARTUP_CACHED_LIST);
+            }
+        }
+
+        @Override
+        public void onRootChecked(boolean rooted) {
+            if (rooted) {
+                markStartup(STARTUP_ROOT_READY);
+                if (!initialized) initializeApp();
+            } else {
+                Toast.makeText(MainActivity.this, "Root access is required. Exiting.", Toast.LENGTH_LONG).show();
+                finish();
+            }
+        }
+
+        @Override
+        public void onStateChanged(WhitelistDiff diff) {
+            if (diff.packagesReloaded) {
+                if (loadRequested) {
+                    loadRequested = false;
+                    setupRecyclerView(itemsForView(engine.packages(), currentView));
+                } else if (appAdapter != null) {
+                    showItems(itemsForView(engine.packages(), currentView));
+                }
+                markStartup(STARTUP_LIVE_DATA);
+            } else if (appAdapter != null) {
+                appAdapter.applyWhitelistDiff(diff);
+                if (filterMode != AppSearchIndex.FILTER_ALL) applyFilter();
+            }
+        }
+
+        @Override
+        public void onPackagesChanged() {
+            if (appAdapter != null) showItems(itemsForView(engine.packages(), currentView));
+        }
+
+        @Override
+        public void onLoadFailed() {
+            loadRequested = false;
+            Toast.makeText(MainActivity.this, "アプリ一覧を取得できませんでした", Toast.LENGTH_SHORT).show();
+        }
+
+        @Override
+        public void onLabelsChanged(List<String> packageNames) {
+            if (appAdapter != null) appAdapter.notifyPackagesChanged(packageNames);
+        }
+
+        @Override
+        public void onLabelsResolved() {
+            indexItems(shownItems);
+            if (searchField.length() > 0) applyFilter();
+        }
+
+        @Override
+        public void onWhitelistUpdated(List<String> packageNames, boolean add, boolean ok) {
+            if (ok) {
+                String msg;
+                if (packageNames.size() == 1) {
+                    msg = add ? "バッテリー制限のwhitelistに追加しました on" : "バッテリー制限のwhitelistから削除しました。off";
+                } else {
+                    msg = packageNames.size() + (add ? "件をバッテリー制限のwhitelistに追加しました on" : "件をバッテリー制限のwhitelistから削除しました。off");
+                }
+                Toast.makeText(MainActivity.this, msg, Toast.LENGTH_SHORT).show();
+                if (appAdapter != null) appAdapter.setWhitelisted(packageNames, add);
+                if (filterMode != AppSearchIndex.FILTER_ALL) applyFilter();
+            } else {
+                Toast.makeText(MainActivity.this, "Failed to update whitelist", Toast.LENGTH_SHORT).show();
+                if (appAdapter != null) appAdapter.setWhitelisted(packageNames, !add);
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+    processStartAt = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
     AppCompatDelegate.setDefaultNightMode(AppCompatDelegate.MODE_NIGHT_NO);
     super.onCreate(savedInstanceState);
     setContentView(R.layout.activity_main);
@@ -68,44 +174,34 @@ public class MainActivity extends AppCompatActivity {
     mainLayout = findViewById(R.id.main_layout);
     systemAppListButton = findViewById(R.id.app_list_button);
     userAppListButton = findViewById(R.id.app_ulist_button);
+    bulkLayout = findViewById(R.id.bulk_layout);
+    filterLayout = findViewById(R.id.filter_layout);
+    searchField = findViewById(R.id.search_field);
+    filterModeButton = findViewById(R.id.filter_mode_button);
     systemAppListButton.setVisibility(View.GONE);
     userAppListButton.setVisibility(View.GONE);
-    suShell = new SuShellManager();
-    backgroundExecutor.execute(new Runnable() {
+    engine = WhitelistEngine.get(this);
+    engine.attach();
+    engine.addListener(engineListener);
+    mainLayout.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
         @Override
-        public void run() {
-            suShell.start();
-            checkRootAccess();
+        public boolean onPreDraw() {
+            mainLayout.getViewTreeObserver().removeOnPreDrawListener(this);
+            markStartup(STARTUP_FIRST_FRAME);
+            return true;
            }
        });
+    engine.start();
     }
-    private void checkRootAccess() {
-        List<String> out = suShell.exec("echo root_test", 5000);
-        boolean ok = false;
-        if (out != null) {
-            for (String s : out) {
-                if ("root_test".equals(s != null ? s.trim() : null)) {
-                    ok = true;
-                    break;
-                }
-            }
-        }
-        final boolean rooted = ok;
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                if (rooted) {
-                    initializeApp();
-                } else {
-                    Toast.makeText(MainActivity.this, "Root access is required. Exiting.", Toast.LENGTH_LONG).show();
-                    finish();
-                }
-            }
-        });
+    private void markStartup(int mark) {
+        if (startupMarks[mark] >= 0) return;
+        startupMarks[mark] = SystemClock.elapsedRealtime() - processStartAt;
+        Log.i(TAG, "startup " + STARTUP_MARK_NAMES[mark] + " " + startupMarks[mark] + "ms");
+        metrics.recordNanos("startup." + STARTUP_MARK_NAMES[mark], startupMarks[mark] * 1000000L);
     }
 
     private void initializeApp() {
-        loadWhitelistFromFile();
+        initialized = true;
         systemAppListButton.setVisibility(View.VISIBLE);
         userAppListButton.setVisibility(View.VISIBLE);
         systemAppListButton.setText("システムアプリ一覧");
@@ -113,258 +209,107 @@ public class MainActivity extends AppCompatActivity {
         systemAppListButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                loadPackagesWithCommand("pm list packages -s");
+                openPackageView(VIEW_SYSTEM);
             }
         });
         userAppListButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                loadPackagesWithCommand("pm list packages -3");
+                openPackageView(VIEW_USER);
             }
         });
-        syncHandler = new Handler(Looper.getMainLooper());
-        syncRunnable = new Runnable() {
+        searchField.addTextChangedListener(new TextWatcher() {
             @Override
-            public void run() {
-                backgroundExecutor.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            syncWhitelistAndPackages(false);
-                            saveWhitelistToFile();
-                            runOnUiThread(new Runnable() {
-                                @Override
-                                public void run() {
-                                    if (!isFinishing() && !isDestroyed()) {
-                                        if (appAdapter != null) appAdapter.updateItems(new ArrayList<AppItem>(appItems));
-                                    }
-                                }
-                            });
-                        } catch (Throwable t) {
-                        }
-                    }
-                });
-                if (syncHandler != null) syncHandler.postDelayed(this, SYNC_INTERVAL);
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
             }
-        };
-        syncHandler.postDelayed(syncRunnable, SYNC_INTERVAL);
-    }
 
-    private void loadPackagesWithCommand(final String pmCommand) {
-        new AsyncTask<Void, Void, List<AppItem>>() {
             @Override
-            protected List<AppItem> doInBackground(Void... voids) {
-                try {
-                    List<String> pmLines = suShell.exec(pmCommand, 10000);
-                    if (pmLines == null) pmLines = new ArrayList<String>();
-                    Set<String> currentWhitelist = getWhitelistFromDumpsys();
-                    synchronized (whitelistSet) {
-                        whitelistSet.clear();
-                        whitelistSet.addAll(currentWhitelist);
-                    }
-                    List<AppItem> list = buildAppItemsFromPackageLines(pmLines);
-                    synchronized (appItems) {
-                        appItems.clear();
-                        appItems.addAll(list);
-                    }
-                    return new ArrayList<AppItem>(list);
-                } catch (Throwable t) {
-                    synchronized (appItems) {
-                        return new ArrayList<AppItem>(appItems);
-                    }
-                }
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
             }
 
             @Override
-            protected void onPostExecute(List<AppItem> items) {
-                if (!isFinishing() && !isDestroyed()) setupRecyclerView(items);
-            }
-        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-    }
-
-    private List<AppItem> buildAppItemsFromPackageLines(List<String> pmLines) {
-        List<AppItem> list = new ArrayList<>();
-        PackageManager pm = getPackageManager();
-        for (String line : pmLines) {
-            if (line == null) continue;
-            String l = line.trim();
-            if (l.isEmpty()) continue;
-            String pkg = l;
-            if (pkg.startsWith("package:")) pkg = pkg.substring(8);
-            int sp = pkg.indexOf('=');
-            if (sp > 0) pkg = pkg.substring(0, sp);
-            pkg = pkg.trim();
-            if (pkg.isEmpty()) continue;
-            String label = pkg;
-            try {
-                int flags = PackageManager.GET_META_DATA;
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    try {
-                        flags |= PackageManager.MATCH_DISABLED_COMPONENTS;
-                    } catch (NoSuchFieldError ignored) {}
-                }
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                    try {
-                        flags |= PackageManager.MATCH_UNINSTALLED_PACKAGES;
-                    } catch (NoSuchFieldError ignored) {}
-                }
-                ApplicationInfo ai = pm.getApplicationInfo(pkg, flags);
-                CharSequence lab = null;
-                try {
-                    lab = ai.loadLabel(pm);
-                } catch (Throwable t) {
-                }
-                if (lab != null && lab.length() > 0) {
-                    label = lab.toString();
-                } else {
-                    if (ai.nonLocalizedLabel != null && ai.nonLocalizedLabel.length() > 0) {
-                        label = ai.nonLocalizedLabel.toString();
-                    } else if (ai.labelRes != 0) {
-                        try {
-                            Resources r = pm.getResourcesForApplication(ai);
-                            String s = r.getString(ai.labelRes);
-                            if (s != null && s.length() > 0) label = s;
-                        } catch (Throwable t) {
-                        }
-                    } else {
-                        try {
-                            CharSequence gl = pm.getApplicationLabel(ai);
-                            if (gl != null && gl.length() > 0) label = gl.toString();
-                        } catch (Throwable t) {
-                        }
-                    }
-                }
-            } catch (Throwable e) {
-                try {
-                    PackageInfo pi = pm.getPackageInfo(pkg, 0);
-                    if (pi != null && pi.applicationInfo != null) {
-                        try {
-                            CharSequence lab2 = pi.applicationInfo.loadLabel(pm);
-                            if (lab2 != null && lab2.length() > 0) label = lab2.toString();
-                        } catch (Throwable t2) {
-                        }
-                    }
-                } catch (Throwable ignored) {
-                }
+            public void afterTextChanged(Editable s) {
+                applyFilter();
             }
-            boolean wh = whitelistSet.contains(pkg);
-            list.add(new AppItem(label, pkg, wh));
-        }
-        return list;
-    }
-
-    private void loadAppList() {
-        new AsyncTask<Void, Void, List<AppItem>>() {
+        });
+        filterModeButton.setOnClickListener(new View.OnClickListener() {
             @Override
-            protected List<AppItem> doInBackground(Void... voids) {
-                try {
-                    syncWhitelistAndPackages(true);
-                    return new ArrayList<AppItem>(appItems);
-                } catch (Throwable t) {
-                    return new ArrayList<AppItem>(appItems);
-                }
+            public void onClick(View v) {
+                cycleFilterMode();
             }
-
+        });
+        filterModeButton.setOnLongClickListener(new View.OnLongClickListener() {
             @Override
-            protected void onPostExecute(List<AppItem> items) {
-                if (!isFinishing() && !isDestroyed()) setupRecyclerView(items);
+            public boolean onLongClick(View v) {
+                startActivity(new Intent(MainActivity.this, MetricsActivity.class));
+                return true;
             }
-        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-    }
-
-    private void syncWhitelistAndPackages(boolean forceReloadPackages) {
-        try {
-            Set<String> newWhitelist = getWhitelistFromDumpsys();
-            synchronized (whitelistSet) {
-                whitelistSet.clear();
-                whitelistSet.addAll(newWhitelist);
+        });
+        findViewById(R.id.bulk_on_button).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                applyBulkWhitelist(true);
             }
-            if (forceReloadPackages || appItems.isEmpty()) {
-                List<String> pmLines = suShell.exec("pm list packages", 10000);
-                if (pmLines == null) pmLines = new ArrayList<String>();
-                List<AppItem> packages = buildAppItemsFromPackageLines(pmLines);
-                synchronized (appItems) {
-                    appItems.clear();
-                    appItems.addAll(packages);
-                }
-            } else {
-                synchronized (appItems) {
-                    for (AppItem ai : appItems) {
-                        ai.isWhitelisted = whitelistSet.contains(ai.packageName);
-                    }
-                }
+        });
+        findViewById(R.id.bulk_off_button).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                applyBulkWhitelist(false);
             }
-        } catch (Throwable t) {
-        }
+        });
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        registerReceiver(packageReceiver, packageFilter);
+        packageReceiverRegistered = true;
     }
 
-    private Set<String> getWhitelistFromDumpsys() {
-        Set<String> set = new HashSet<>();
-        List<String> lines = suShell.exec("dumpsys deviceidle whitelist", 10000);
-        if (lines == null) return set;
-        for (String line : lines) {
-            if (line == null) continue;
-            String trimmed = line.trim();
-            if (trimmed.isEmpty()) continue;
-            if (trimmed.startsWith("+")) {
-                String pkg = trimmed.substring(1).trim();
-                if (isValidPackageName(pkg)) set.add(pkg);
-                continue;
-            }
-            String[] parts = trimmed.split("[ ,\\[\\]]+");
-            for (String p : parts) {
-                if (isValidPackageName(p)) set.add(p);
-            }
+    private void openPackageView(int view) {
+        currentView = view;
+        List<AppItem> snapshot = engine.packages();
+        if (!snapshot.isEmpty()) {
+            setupRecyclerView(itemsForView(snapshot, view));
+            return;
         }
-        return set;
+        loadRequested = true;
+        engine.loadPackages();
     }
 
-    private boolean isValidPackageName(String s) {
-        if (s == null) return false;
-        s = s.trim();
-        if (!s.contains(".")) return false;
-        if (s.length() < 3) return false;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '.')) return false;
-        }
-        return true;
+    private static List<AppItem> itemsForView(List<AppItem> all, int view) {
+        boolean system = view == VIEW_SYSTEM;
+        List<AppItem> out = new ArrayList<AppItem>();
+        for (AppItem item : all) {
+            if (item.isSystem == system) out.add(item);
+        }
+        return out;
     }
 
-    public void updateWhitelist(final String packageName, final boolean add) {
-        backgroundExecutor.execute(new Runnable() {
+    private void runOnUi(final Runnable r) {
+        runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                try {
-                    String cmd = "dumpsys deviceidle whitelist " + (add ? ("+" + packageName) : ("-" + packageName));
-                    suShell.exec(cmd, 8000);
-                    synchronized (whitelistSet) {
-                        if (add) whitelistSet.add(packageName); else whitelistSet.remove(packageName);
-                    }
-                    saveWhitelistToFile();
-                    final String msg = add ? "バッテリー制限のwhitelistに追加しました on" : "バッテリー制限のwhitelistから削除しました。off";
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (!isFinishing() && !isDestroyed()) {
-                                Toast.makeText(MainActivity.this, msg, Toast.LENGTH_SHORT).show();
-                                if (appAdapter != null) appAdapter.notifyDataSetChanged();
-                            }
-                        }
-                    });
-                } catch (Throwable t) {
-                    final String err = "Failed to update whitelist";
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (!isFinishing() && !isDestroyed()) Toast.makeText(MainActivity.this, err, Toast.LENGTH_SHORT).show();
-                        }
-                    });
-                }
+                if (!isFinishing() && !isDestroyed()) r.run();
             }
         });
     }
 
+    public void updateWhitelist(final String packageName, final boolean add) {
+        engine.updateWhitelist(Collections.singletonList(packageName), add);
+    }
+
+    private void applyBulkWhitelist(boolean add) {
+        if (appAdapter == null) return;
+        List<String> targets = appAdapter.getSelectedPackages();
+        if (targets.isEmpty()) targets = appAdapter.getVisiblePackages();
+        appAdapter.clearSelection();
+        // -pkg only drops user entries; system-exempt packages stay on whatever we send.
+        if (!add) targets.removeAll(engine.systemWhitelist());
+        engine.updateWhitelist(targets, add);
+    }
+
     private void setupRecyclerView(List<AppItem> items) {
         if (appRecyclerView == null) {
             appRecyclerView = new RecyclerView(this);
@@ -373,233 +318,302 @@ public class MainActivity extends AppCompatActivity {
                     LinearLayout.LayoutParams.MATCH_PARENT
             );
             mainLayout.addView(appRecyclerView, params);
+            appRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+            appRecyclerView.setHasFixedSize(true);
+            appRecyclerView.setItemViewCacheSize(VIEW_CACHE_SIZE);
+            appRecyclerView.getRecycledViewPool().setMaxRecycledViews(0, PREALLOCATED_VIEW_HOLDERS);
+            appAdapter = new AppAdapter(this);
+            appAdapter.setHasStableIds(true);
+            appRecyclerView.setAdapter(appAdapter);
+            for (int i = 0; i < PREALLOCATED_VIEW_HOLDERS; i++) {
+                appRecyclerView.getRecycledViewPool().putRecycledView(appAdapter.createViewHolder(appRecyclerView, 0));
+            }
         }
-        appRecyclerView.setLayoutManager(new LinearLayoutManager(this));
-        appAdapter = new AppAdapter(items, this);
-        appRecyclerView.setAdapter(appAdapter);
+        showItems(items);
+        appRecyclerView.scrollToPosition(0);
+        bulkLayout.setVisibility(View.VISIBLE);
+        filterLayout.setVisibility(View.VISIBLE);
     }
 
-    private void saveWhitelistToFile() {
-        BufferedWriter bw = null;
-        try {
-            FileOutputStream fos = openFileOutput(WHITELIST_FILE, MODE_PRIVATE);
-            bw = new BufferedWriter(new OutputStreamWriter(fos));
-            synchronized (whitelistSet) {
-                for (String pkg : whitelistSet) {
-                    bw.write(pkg);
-                    bw.newLine();
-                }
-            }
-            bw.flush();
-        } catch (Exception e) {
-        } finally {
-            try {
-                if (bw != null) bw.close();
-            } catch (IOException e) {
-            }
+    private void showItems(List<AppItem> items) {
+        shownItems = items;
+        indexItems(items);
+        applyFilter();
+    }
+
+    private void indexItems(List<AppItem> items) {
+        String[] labels = new String[items.size()];
+        String[] packageNames = new String[items.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = items.get(i).appName;
+            packageNames[i] = items.get(i).packageName;
         }
+        indexedItems = items;
+        searchIndex = new AppSearchIndex(labels, packageNames);
     }
 
-    private void loadWhitelistFromFile() {
-        FileInputStream fis = null;
-        BufferedReader br = null;
-        try {
-            fis = openFileInput(WHITELIST_FILE);
-            br = new BufferedReader(new InputStreamReader(fis));
-            String line;
-            synchronized (whitelistSet) {
-                whitelistSet.clear();
-                while ((line = br.readLine()) != null) {
-                    String t = line.trim();
-                    if (!t.isEmpty() && isValidPackageName(t)) whitelistSet.add(t);
-                }
-            }
-        } catch (Exception e) {
-        } finally {
-            try {
-                if (br != null) br.close();
-                if (fis != null) fis.close();
-            } catch (IOException e) {
+    private void applyFilter() {
+        final AppSearchIndex index = searchIndex;
+        final List<AppItem> indexed = indexedItems;
+        if (index == null || appAdapter == null) return;
+        final int seq = ++filterSeq;
+        final String query = searchField.getText().toString();
+        final int mode = filterMode;
+        final Set<String> whitelisted = engine.whitelist();
+        final Set<String> exempt = engine.systemWhitelist();
+        final AppAdapter.ListState shown = appAdapter.currentState();
+        cpuExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int[] matches = index.filter(query, mode, whitelisted);
+                List<AppItem> result = new ArrayList<AppItem>(matches.length);
+                for (int i : matches) result.add(indexed.get(i));
+                final AppAdapter.Update update = AppAdapter.diff(shown, result, whitelisted, exempt);
+                runOnUi(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Only the latest filter is applied, so no other filter has replaced the list it was diffed against.
+                        if (seq == filterSeq) appAdapter.apply(update);
+                    }
+                });
             }
+        });
+    }
+
+    private void cycleFilterMode() {
+        filterMode = (filterMode + 1) % 3;
+        if (filterMode == AppSearchIndex.FILTER_WHITELISTED) {
+            filterModeButton.setText("onのみ");
+        } else if (filterMode == AppSearchIndex.FILTER_NOT_WHITELISTED) {
+            filterModeButton.setText("offのみ");
+        } else {
+            filterModeButton.setText("全て");
         }
+        applyFilter();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        engine.resumePolling();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        engine.pausePolling();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         try {
-            if (syncHandler != null && syncRunnable != null) {
-                syncHandler.removeCallbacks(syncRunnable);
-            }
-            backgroundExecutor.shutdownNow();
-            if (suShell != null) suShell.stop();
+            engine.removeListener(engineListener);
+            if (packageReceiverRegistered) unregisterReceiver(packageReceiver);
+            cpuExecutor.shutdownNow();
+            engine.detach();
         } catch (Throwable t) {
         }
     }
 
-    private static class AppItem {
-        String appName;
-        String packageName;
-        boolean isWhitelisted;
-        AppItem(String appName, String packageName, boolean isWhitelisted) {
-            this.appName = appName;
-            this.packageName = packageName;
-            this.isWhitelisted = isWhitelisted;
-        }
-    }
-
     private static class AppAdapter extends RecyclerView.Adapter<AppAdapter.ViewHolder> {
-        private List<AppItem> items;
+        private static final int SELECTED_COLOR = Color.parseColor("#E3F2FD");
+        private List<AppItem> items = new ArrayList<AppItem>();
+        private final AppRowState rows = new AppRowState();
+        private long[] ids = new long[0];
+        private final Map<String, Integer> positions = new HashMap<String, Integer>();
+        private final Map<String, Long> stableIds = new HashMap<String, Long>();
         private MainActivity activity;
-        AppAdapter(List<AppItem> items, MainActivity activity) {
-            this.items = new ArrayList<AppItem>(items);
+        AppAdapter(MainActivity activity) {
             this.activity = activity;
         }
-        void updateItems(List<AppItem> newItems) {
-            this.items = new ArrayList<AppItem>(newItems);
-            notifyDataSetChanged();
+        /** Copies what is shown now, on the UI thread, so a diff against it can run elsewhere. */
+        ListState currentState() {
+            String[] names = new String[items.size()];
+            for (int i = 0; i < names.length; i++) names[i] = items.get(i).appName;
+            return new ListState(items, rows.whitelistedCopy(), rows.systemExempt(), names);
+        }
+        /** Diffs {@code from} against a new list. Runs off the UI thread. */
+        static Update diff(final ListState from, List<AppItem> newItems, Set<String> whitelist, Set<String> exempt) {
+            final List<AppItem> newList = new ArrayList<AppItem>(newItems);
+            final boolean[] newWhitelisted = new boolean[newList.size()];
+            final boolean[] newExempt = new boolean[newList.size()];
+            for (int i = 0; i < newWhitelisted.length; i++) {
+                String pkg = newList.get(i).packageName;
+                newWhitelisted[i] = whitelist.contains(pkg);
+                newExempt[i] = exempt.contains(pkg);
+            }
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return from.items.size();
+                }
+                @Override
+                public int getNewListSize() {
+                    return newList.size();
+                }
+                @Override
+                public boolean areItemsTheSame(int oldPos, int newPos) {
+                    return from.items.get(oldPos).packageName.equals(newList.get(newPos).packageName);
+                }
+                @Override
+                public boolean areContentsTheSame(int oldPos, int newPos) {
+                    AppItem n = newList.get(newPos);
+                    return from.whitelisted[oldPos] == newWhitelisted[newPos] && from.systemExempt[oldPos] == newExempt[newPos]
+                            && from.names[oldPos].equals(n.appName);
+                }
+            }, false);
+            return new Update(newList, newWhitelisted, newExempt, result);
+        }
+        /**
+         * Publishes a precomputed diff; {@code update} must have been computed
+         * from the current list. Sync diffs and toggles that landed while it
+         * was computed are newer than its whitelist flags, so rows still on
+         * screen keep their live flag and are rebound if it differs.
+         */
+        void apply(Update update) {
+            List<Integer> corrected = new ArrayList<Integer>();
+            for (int i = 0; i < update.items.size(); i++) {
+                Integer old = positions.get(update.items.get(i).packageName);
+                if (old == null || rows.isWhitelisted(old) == update.whitelisted[i]) continue;
+                update.whitelisted[i] = rows.isWhitelisted(old);
+                corrected.add(i);
+            }
+            long[] newIds = new long[update.items.size()];
+            positions.clear();
+            for (int i = 0; i < newIds.length; i++) {
+                String pkg = update.items.get(i).packageName;
+                Long id = stableIds.get(pkg);
+                if (id == null) {
+                    id = (long) stableIds.size();
+                    stableIds.put(pkg, id);
+                }
+                newIds[i] = id;
+                positions.put(pkg, i);
+            }
+            items = update.items;
+            rows.replace(update.whitelisted, update.systemExempt);
+            ids = newIds;
+            update.result.dispatchUpdatesTo(this);
+            for (int pos : corrected) notifyItemChanged(pos);
+        }
+        void setWhitelisted(List<String> packageNames, boolean whitelisted) {
+            for (String pkg : packageNames) setWhitelisted(pkg, whitelisted);
+        }
+        void applyWhitelistDiff(WhitelistDiff diff) {
+            for (String pkg : diff.added) setWhitelisted(pkg, true);
+            for (String pkg : diff.removed) setWhitelisted(pkg, false);
+        }
+        private void setWhitelisted(String pkg, boolean whitelisted) {
+            Integer pos = positions.get(pkg);
+            if (pos != null && rows.setWhitelisted(pos, whitelisted)) notifyItemChanged(pos);
+        }
+        void notifyPackagesChanged(List<String> packageNames) {
+            for (String pkg : packageNames) {
+                Integer pos = positions.get(pkg);
+                if (pos != null) notifyItemChanged(pos);
+            }
+        }
+        List<String> getSelectedPackages() {
+            List<String> out = new ArrayList<String>();
+            for (AppItem item : items) {
+                if (rows.isSelected(item.packageName)) out.add(item.packageName);
+            }
+            return out;
+        }
+        List<String> getVisiblePackages() {
+            List<String> out = new ArrayList<String>(items.size());
+            for (AppItem item : items) out.add(item.packageName);
+            return out;
+        }
+        void clearSelection() {
+            if (rows.clearSelection()) notifyDataSetChanged();
         }
         @NonNull
         @Override
         public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            Metrics.global().increment("adapter.create");
             View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.app_item, parent, false);
-            return new ViewHolder(view);
-        }
-        @Override
-        public void onBindViewHolder(@NonNull final ViewHolder holder, int position) {
-            final AppItem item = items.get(position);
-            holder.appNameText.setText(item.appName);
-            holder.packageNameText.setText(item.packageName);
-            holder.toggleSwitch.setOnCheckedChangeListener(null);
-            holder.toggleSwitch.setChecked(item.isWhitelisted);
+            final ViewHolder holder = new ViewHolder(view);
+            holder.itemView.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    int pos = holder.getBindingAdapterPosition();
+                    if (pos == RecyclerView.NO_POSITION) return false;
+                    rows.toggleSelected(items.get(pos).packageName);
+                    notifyItemChanged(pos);
+                    return true;
+                }
+            });
             holder.toggleSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
                 @Override
                 public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                    item.isWhitelisted = isChecked;
-                    activity.updateWhitelist(item.packageName, isChecked);
+                    if (holder.binding) return;
+                    int pos = holder.getBindingAdapterPosition();
+                    if (pos == RecyclerView.NO_POSITION) return;
+                    if (!rows.setWhitelisted(pos, isChecked)) return;
+                    activity.updateWhitelist(items.get(pos).packageName, isChecked);
                 }
             });
+            return holder;
+        }
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+            AppItem item = items.get(position);
+            rows.bind(position, item.appName, item.packageName, holder);
+        }
+        @Override
+        public long getItemId(int position) {
+            return ids[position];
         }
         @Override
         public int getItemCount() {
             return items.size();
         }
-        static class ViewHolder extends RecyclerView.ViewHolder {
+        static class ListState {
+            final List<AppItem> items;
+            final boolean[] whitelisted;
+            final boolean[] systemExempt;
+            final String[] names;
+            ListState(List<AppItem> items, boolean[] whitelisted, boolean[] systemExempt, String[] names) {
+                this.items = items;
+                this.whitelisted = whitelisted;
+                this.systemExempt = systemExempt;
+                this.names = names;
+            }
+        }
+        static class Update {
+            final List<AppItem> items;
+            final boolean[] whitelisted;
+            final boolean[] systemExempt;
+            final DiffUtil.DiffResult result;
+            Update(List<AppItem> items, boolean[] whitelisted, boolean[] systemExempt, DiffUtil.DiffResult result) {
+                this.items = items;
+                this.whitelisted = whitelisted;
+                this.systemExempt = systemExempt;
+                this.result = result;
+            }
+        }
+        static class ViewHolder extends RecyclerView.ViewHolder implements AppRowState.Row {
             TextView appNameText;
             TextView packageNameText;
             Switch toggleSwitch;
+            boolean binding;
             ViewHolder(View itemView) {
                 super(itemView);
                 appNameText = itemView.findViewById(R.id.app_name);
                 packageNameText = itemView.findViewById(R.id.package_name);
                 toggleSwitch = itemView.findViewById(R.id.toggle_switch);
             }
-        }
-    }
-
-    private static class SuShellManager {
-        private Process proc;
-        private DataOutputStream os;
-        private BufferedReader in;
-        private BufferedReader err;
-        private final Object lock = new Object();
-        private volatile boolean started = false;
-        private final Random rnd = new Random();
-
-        boolean start() {
-            synchronized (lock) {
-                if (started) return true;
-                try {
-                    proc = Runtime.getRuntime().exec("su");
-                    os = new DataOutputStream(proc.getOutputStream());
-                    in = new BufferedReader(new InputStreamReader(proc.getInputStream()));
-                    err = new BufferedReader(new InputStreamReader(proc.getErrorStream()));
-                    started = true;
-                    return true;
-                } catch (Throwable t) {
-                    started = false;
-                    try {
-                        if (os != null) os.close();
-                        if (in != null) in.close();
-                        if (err != null) err.close();
-                        if (proc != null) proc.destroy();
-                    } catch (IOException e) {
-                    }
-                    os = null;
-                    in = null;
-                    err = null;
-                    proc = null;
-                    return false;
-                }
-            }
-        }
-
-        List<String> exec(String command, long timeoutMs) {
-            List<String> out = new ArrayList<String>();
-            synchronized (lock) {
-                if (!started) {
-                    if (!start()) return out;
-                }
-                String marker = "__END__" + Long.toHexString(System.nanoTime()) + Integer.toHexString(rnd.nextInt());
-                try {
-                    os.writeBytes(command + "\n");
-                    os.writeBytes("echo " + marker + "\n");
-                    os.flush();
-                    long deadline = System.currentTimeMillis() + timeoutMs;
-                    String line;
-                    while (System.currentTimeMillis() < deadline) {
-                        try {
-                            if (in != null && in.ready()) {
-                                line = in.readLine();
-                                if (line == null) break;
-                                if (line.equals(marker)) break;
-                                out.add(line);
-                                continue;
-                            }
-                            if (err != null && err.ready()) {
-                                err.readLine();
-                                continue;
-                            }
-                        } catch (IOException ioe) {
-                        }
-                        try {
-                            Thread.sleep(20);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            break;
-                        }
-                    }
-                } catch (Throwable t) {
-                }
-                return out;
-            }
-        }
-
-        void stop() {
-            synchronized (lock) {
-                try {
-                    if (os != null) {
-                        try {
-                            os.writeBytes("exit\n");
-                            os.flush();
-                        } catch (Throwable ignored) {
-                        }
-                    }
-                } catch (Throwable t) {
-                } finally {
-                    try {
-                        if (os != null) os.close();
-                        if (in != null) in.close();
-                        if (err != null) err.close();
-                        if (proc != null) proc.destroy();
-                    } catch (IOException e) {
-                    }
-                    os = null;
-                    in = null;
-                    err = null;
-                    proc = null;
-                    started = false;
-                }
+            @Override
+            public void bind(CharSequence appName, CharSequence packageName, boolean selected, boolean checked, boolean enabled) {
+                binding = true;
+                appNameText.setText(appName);
+                packageNameText.setText(packageName);
+                itemView.setBackgroundColor(selected ? SELECTED_COLOR : Color.TRANSPARENT);
+                toggleSwitch.setChecked(checked);
+                toggleSwitch.setEnabled(enabled);
+                binding = false;
             }
         }
     }
@@ -0,0 +1,64 @@
+package com.coara.whiteapp;
+
+import android.content.Intent;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class MetricsActivity extends AppCompatActivity {
+    private static final String EXPORT_FILE = "metrics.txt";
+    private TextView metricsText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        getWindow().getDecorView().setBackgroundColor(Color.parseColor("#FFFFFF"));
+        setTitle("計測値");
+        metricsText = findViewById(R.id.metrics_text);
+        findViewById(R.id.share_button).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                exportMetrics();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        metricsText.setText(Metrics.global().dump());
+    }
+
+    private void exportMetrics() {
+        String dump = Metrics.global().dump();
+        metricsText.setText(dump);
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(new File(getFilesDir(), EXPORT_FILE));
+            fos.write(dump.getBytes("UTF-8"));
+        } catch (IOException e) {
+        } finally {
+            try {
+                if (fos != null) fos.close();
+            } catch (IOException e) {
+            }
+        }
+        try {
+            Intent send = new Intent(Intent.ACTION_SEND);
+            send.setType("text/plain");
+            send.putExtra(Intent.EXTRA_TEXT, dump);
+            startActivity(Intent.createChooser(send, "計測値を書き出し"));
+        } catch (Throwable t) {
+            Toast.makeText(this, "書き出し先がありません", Toast.LENGTH_SHORT).show();
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package com.coara.whiteapp;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.os.Build;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The installed package list with labels and flags, published as immutable
+ * snapshots, plus the on-disk {@link AppSnapshot} behind the cold-start
+ * paint. Owned by WhitelistEngine; shell output is passed in, labels are
+ * resolved on a small CPU pool.
+ */
+final class PackageCatalog {
+    static final String[] SNAPSHOT_COMMANDS = {
+            "pm list packages -s", "pm list packages -3", "pm list packages -d"
+    };
+    private static final String SNAPSHOT_FILE = "app_snapshot.bin";
+    // Text caches written before the snapshot existed.
+    private static final String[] LEGACY_FILES = {"app_list_cache.txt", "label_cache.txt"};
+    private static final long NO_PACKAGE_INFO = Long.MIN_VALUE;
+    private static final int CPU_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int LABEL_PUBLISH_BATCH = 16;
+
+    private final Context context;
+    private final ExecutorService cpuExecutor = Executors.newFixedThreadPool(CPU_THREADS);
+    private final AtomicReference<List<AppItem>> items = new AtomicReference<List<AppItem>>(Collections.<AppItem>emptyList());
+    private final SnapshotStore snapshotStore;
+    private volatile int packageSequence = 0;
+
+    /** Progress of an asynchronous label pass. Called on CPU threads. */
+    interface LabelListener {
+        boolean isCurrent();
+
+        void onLabels(List<String> packageNames);
+
+        void onDone();
+    }
+
+    PackageCatalog(Context context) {
+        this.context = context;
+        snapshotStore = new SnapshotStore(new File(context.getFilesDir(), SNAPSHOT_FILE), Locale.getDefault().toString());
+    }
+
+    ExecutorService cpuExecutor() {
+        return cpuExecutor;
+    }
+
+    List<AppItem> items() {
+        return items.get();
+    }
+
+    /** Publishes the list from the on-disk snapshot unless a live list is already loaded. Returns the snapshot, or null. */
+    AppSnapshot loadCached() {
+        AppSnapshot snapshot = snapshotStore.snapshot();
+        if (snapshot == null) return null;
+        List<AppItem> cached = new ArrayList<AppItem>(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            cached.add(new AppItem(snapshot.label(i), snapshot.packageName(i), snapshot.isSystem(i), snapshot.isDisabled(i)));
+        }
+        if (!cached.isEmpty()) items.compareAndSet(Collections.<AppItem>emptyList(), Collections.unmodifiableList(cached));
+        return snapshot;
+    }
+
+    /** Remembers the package-manager sequence a pm snapshot is about to be taken at. */
+    void markSequence() {
+        packageSequence = currentPackageSequence();
+    }
+
+    /** Packages changed since the last snapshot or catch-up, or an empty list. */
+    List<String> changedPackages() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || items.get().isEmpty()) return Collections.emptyList();
+        try {
+            ChangedPackages changed = context.getPackageManager().getChangedPackages(packageSequence);
+            if (changed == null) return Collections.emptyList();
+            packageSequence = changed.getSequenceNumber();
+            return changed.getPackageNames();
+        } catch (Throwable t) {
+            return Collections.emptyList();
+        }
+    }
+
+    private int currentPackageSequence() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return 0;
+        try {
+            ChangedPackages changed = context.getPackageManager().getChangedPackages(0);
+            if (changed != null) return changed.getSequenceNumber();
+        } catch (Throwable t) {
+        }
+        return 0;
+    }
+
+    /**
+     * Builds and publishes a list from the SNAPSHOT_COMMANDS output. Items
+     * whose label is not cached keep their package name and are collected in
+     * {@code unresolved}.
+     */
+    void publish(List<String> results, Map<String, PackageInfo> infos, List<AppItem> unresolved) {
+        Set<String> disabled = new HashSet<String>(WhitelistParser.parsePackageLines(results.get(2)));
+        List<AppItem> list = new ArrayList<AppItem>();
+        addAppItems(list, WhitelistParser.parsePackageLines(results.get(0)), true, disabled, infos, unresolved);
+        addAppItems(list, WhitelistParser.parsePackageLines(results.get(1)), false, disabled, infos, unresolved);
+        items.set(Collections.unmodifiableList(list));
+    }
+
+    /** Publishes a list from the SNAPSHOT_COMMANDS output with every label resolved inline. */
+    void reload(List<String> results) {
+        PackageManager pm = context.getPackageManager();
+        Map<String, PackageInfo> infos = installedPackageInfos();
+        List<AppItem> unresolved = new ArrayList<AppItem>();
+        publish(results, infos, unresolved);
+        for (AppItem item : unresolved) {
+            item.appName = resolveLabel(pm, item.packageName);
+            PackageInfo info = infos.get(item.packageName);
+            snapshotStore.putLabel(item.packageName, labelTime(info), labelVersion(info), item.appName);
+        }
+    }
+
+    private void addAppItems(List<AppItem> list, List<String> packages, boolean system, Set<String> disabled, Map<String, PackageInfo> infos, List<AppItem> unresolved) {
+        for (String pkg : packages) {
+            PackageInfo info = infos.get(pkg);
+            String label = snapshotStore.getLabel(pkg, labelTime(info), labelVersion(info));
+            AppItem item = new AppItem(label != null ? label : pkg, pkg, system, disabled.contains(pkg));
+            if (label == null) unresolved.add(item);
+            list.add(item);
+        }
+    }
+
+    /** Resolves labels in parallel, reporting them in small batches. */
+    void resolveLabels(final List<AppItem> unresolved, final Map<String, PackageInfo> infos, final LabelListener listener) {
+        final int total = unresolved.size();
+        if (total == 0) {
+            listener.onDone();
+            return;
+        }
+        final PackageManager pm = context.getPackageManager();
+        final AtomicInteger remaining = new AtomicInteger(total);
+        int chunk = (total + CPU_THREADS - 1) / CPU_THREADS;
+        for (int start = 0; start < total; start += chunk) {
+            final List<AppItem> part = unresolved.subList(start, Math.min(total, start + chunk));
+            cpuExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<String> resolved = new ArrayList<String>(LABEL_PUBLISH_BATCH);
+                    for (AppItem item : part) {
+                        if (!listener.isCurrent()) return;
+                        String label = resolveLabel(pm, item.packageName);
+                        PackageInfo info = infos.get(item.packageName);
+                        snapshotStore.putLabel(item.packageName, labelTime(info), labelVersion(info), label);
+                        item.appName = label;
+                        resolved.add(item.packageName);
+                        if (resolved.size() == LABEL_PUBLISH_BATCH) {
+                            listener.onLabels(resolved);
+                            resolved = new ArrayList<String>(LABEL_PUBLISH_BATCH);
+                        }
+                    }
+                    if (!resolved.isEmpty()) listener.onLabels(resolved);
+                    if (remaining.addAndGet(-part.size()) == 0) listener.onDone();
+                }
+            });
+        }
+    }
+
+    /** Per-package pm queries for {@link #applyPatch}; invalid names are dropped from {@code valid}. */
+    static String[] patchCommands(List<String> packageNames, List<String> valid) {
+        for (String pkg : packageNames) {
+            if (WhitelistParser.isValidPackageName(pkg)) valid.add(pkg);
+        }
+        String[] cmds = new String[valid.size() * 3];
+        for (int i = 0; i < valid.size(); i++) {
+            cmds[i * 3] = "pm list packages " + valid.get(i);
+            cmds[i * 3 + 1] = "pm list packages -s " + valid.get(i);
+            cmds[i * 3 + 2] = "pm list packages -d " + valid.get(i);
+        }
+        return cmds;
+    }
+
+    /** Replaces, adds or drops the patched packages in the published list; uninstalled ones go to {@code gone}. */
+    void applyPatch(List<String> valid, List<String> results, List<String> gone) {
+        PackageManager pm = context.getPackageManager();
+        Map<String, AppItem> patched = new HashMap<String, AppItem>();
+        for (int i = 0; i < valid.size(); i++) {
+            String pkg = valid.get(i);
+            AppItem item = null;
+            if (WhitelistParser.parsePackageLines(results.get(i * 3)).contains(pkg)) {
+                boolean system = WhitelistParser.parsePackageLines(results.get(i * 3 + 1)).contains(pkg);
+                boolean disabled = WhitelistParser.parsePackageLines(results.get(i * 3 + 2)).contains(pkg);
+                String label = resolveLabel(pm, pkg);
+                try {
+                    PackageInfo info = getPackageInfo(pm, pkg);
+                    snapshotStore.putLabel(pkg, info.lastUpdateTime, getVersionCode(info), label);
+                } catch (Throwable t) {
+                    snapshotStore.putLabel(pkg, labelTime(null), labelVersion(null), label);
+                }
+                item = new AppItem(label, pkg, system, disabled);
+            } else {
+                snapshotStore.removeLabel(pkg);
+                gone.add(pkg);
+            }
+            patched.put(pkg, item);
+        }
+        while (true) {
+            List<AppItem> prev = items.get();
+            List<AppItem> next = new ArrayList<AppItem>(prev.size() + patched.size());
+            Set<String> seen = new HashSet<String>();
+            for (AppItem old : prev) {
+                if (!patched.containsKey(old.packageName)) {
+                    next.add(old);
+                    continue;
+                }
+                AppItem item = patched.get(old.packageName);
+                if (item != null) next.add(item);
+                seen.add(old.packageName);
+            }
+            for (Map.Entry<String, AppItem> e : patched.entrySet()) {
+                if (e.getValue() != null && !seen.contains(e.getKey())) next.add(e.getValue());
+            }
+            if (items.compareAndSet(prev, Collections.unmodifiableList(next))) break;
+        }
+    }
+
+    void save(Set<String> whitelist) {
+        snapshotStore.save(items.get(), whitelist);
+    }
+
+    Map<String, PackageInfo> installedPackageInfos() {
+        Map<String, PackageInfo> infos = new HashMap<String, PackageInfo>();
+        try {
+            for (PackageInfo pi : getInstalledPackages(context.getPackageManager())) {
+                infos.put(pi.packageName, pi);
+            }
+        } catch (Throwable t) {
+        }
+        return infos;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static List<PackageInfo> getInstalledPackages(PackageManager pm) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return pm.getInstalledPackages(PackageManager.PackageInfoFlags.of(getPackageQueryFlags()));
+        }
+        return pm.getInstalledPackages(getPackageQueryFlags());
+    }
+
+    @SuppressWarnings("deprecation")
+    private static PackageInfo getPackageInfo(PackageManager pm, String pkg) throws PackageManager.NameNotFoundException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return pm.getPackageInfo(pkg, PackageManager.PackageInfoFlags.of(getPackageQueryFlags()));
+        }
+        return pm.getPackageInfo(pkg, getPackageQueryFlags());
+    }
+
+    private static int getPackageQueryFlags() {
+        int flags = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            try {
+                flags |= PackageManager.MATCH_DISABLED_COMPONENTS;
+            } catch (NoSuchFieldError ignored) {}
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            try {
+                flags |= PackageManager.MATCH_UNINSTALLED_PACKAGES;
+            } catch (NoSuchFieldError ignored) {}
+        }
+        return flags;
+    }
+
+    /**
+     * Cache key parts for a label. Packages hidden from this app by package
+     * visibility have no PackageInfo; their label is cached under a fixed key
+     * until they become visible.
+     */
+    private static long labelTime(PackageInfo info) {
+        return info != null ? info.lastUpdateTime : NO_PACKAGE_INFO;
+    }
+
+    private static long labelVersion(PackageInfo info) {
+        return info != null ? getVersionCode(info) : NO_PACKAGE_INFO;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long getVersionCode(PackageInfo info) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) return info.getLongVersionCode();
+        return info.versionCode;
+    }
+
+    private static String resolveLabel(PackageManager pm, String pkg) {
+        long t0 = System.nanoTime();
+        String label = loadLabel(pm, pkg);
+        Metrics.global().recordNanos("label.resolve", System.nanoTime() - t0);
+        return label;
+    }
+
+    private static String loadLabel(PackageManager pm, String pkg) {
+        String label = pkg;
+        try {
+            int flags = PackageManager.GET_META_DATA | getPackageQueryFlags();
+            ApplicationInfo ai = pm.getApplicationInfo(pkg, flags);
+            CharSequence lab = null;
+            try {
+                lab = ai.loadLabel(pm);
+            } catch (Throwable t) {
+            }
+            if (lab != null && lab.length() > 0) {
+                label = lab.toString();
+            } else {
+                if (ai.nonLocalizedLabel != null && ai.nonLocalizedLabel.length() > 0) {
+                    label = ai.nonLocalizedLabel.toString();
+                } else if (ai.labelRes != 0) {
+                    try {
+                        Resources r = pm.getResourcesForApplication(ai);
+                        String s = r.getString(ai.labelRes);
+                        if (s != null && s.length() > 0) label = s;
+                    } catch (Throwable t) {
+                    }
+                } else {
+                    try {
+                        CharSequence gl = pm.getApplicationLabel(ai);
+                        if (gl != null && gl.length() > 0) label = gl.toString();
+                    } catch (Throwable t) {
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            try {
+                PackageInfo pi = pm.getPackageInfo(pkg, 0);
+                if (pi != null && pi.applicationInfo != null) {
+                    try {
+                        CharSequence lab2 = pi.applicationInfo.loadLabel(pm);
+                        if (lab2 != null && lab2.length() > 0) label = lab2.toString();
+                    } catch (Throwable t2) {
+                    }
+                }
+            } catch (Throwable ignored) {
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Labels, flags and whitelist bits from the last run, backed by one binary
+     * {@link AppSnapshot}. Labels resolved since then live in a small overlay
+     * until the next save folds them into a fresh snapshot.
+     */
+    private static class SnapshotStore {
+        private final File file;
+        private final String locale;
+        private final Map<String, LabelEntry> updates = new HashMap<String, LabelEntry>();
+        private final Set<String> removed = new HashSet<String>();
+        private AppSnapshot base;
+        private boolean loaded = false;
+
+        SnapshotStore(File file, String locale) {
+            this.file = file;
+            this.locale = locale;
+        }
+
+        synchronized AppSnapshot snapshot() {
+            load();
+            return base;
+        }
+
+        synchronized String getLabel(String pkg, long lastUpdateTime, long versionCode) {
+            load();
+            String label = null;
+            LabelEntry e = updates.get(pkg);
+            if (e != null) {
+                if (e.lastUpdateTime == lastUpdateTime && e.versionCode == versionCode) label = e.label;
+            } else if (base != null && !removed.contains(pkg) && locale.equals(base.locale())) {
+                label = base.labelIfCurrent(pkg, lastUpdateTime, versionCode);
+            }
+            Metrics.global().increment(label != null ? "label.cache.hit" : "label.cache.miss");
+            return label;
+        }
+
+        synchronized void putLabel(String pkg, long lastUpdateTime, long versionCode, String label) {
+            updates.put(pkg, new LabelEntry(lastUpdateTime, versionCode, label));
+            removed.remove(pkg);
+        }
+
+        synchronized void removeLabel(String pkg) {
+            updates.remove(pkg);
+            removed.add(pkg);
+        }
+
+        private void load() {
+            if (loaded) return;
+            loaded = true;
+            long t0 = System.nanoTime();
+            base = AppSnapshot.read(file);
+            Metrics.global().recordNanos("snapshot.load", System.nanoTime() - t0);
+            for (String name : LEGACY_FILES) {
+                new File(file.getParentFile(), name).delete();
+            }
+        }
+
+        /** Rewrites the snapshot from the current list; labels without a known version are stored as stale. */
+        synchronized void save(List<AppItem> items, Set<String> whitelist) {
+            if (items.isEmpty()) return;
+            load();
+            boolean baseCurrent = base != null && locale.equals(base.locale());
+            AppSnapshot.Builder b = new AppSnapshot.Builder(locale);
+            for (AppItem item : items) {
+                long lastUpdateTime = -1;
+                long versionCode = -1;
+                LabelEntry e = updates.get(item.packageName);
+                int i = baseCurrent && e == null && !removed.contains(item.packageName) ? base.indexOf(item.packageName) : -1;
+                if (e != null) {
+                    lastUpdateTime = e.lastUpdateTime;
+                    versionCode = e.versionCode;
+                } else if (i >= 0) {
+                    lastUpdateTime = base.lastUpdateTime(i);
+                    versionCode = base.versionCode(i);
+                }
+                b.add(item.packageName, item.appName, lastUpdateTime, versionCode, item.isSystem, item.isDisabled);
+            }
+            AppSnapshot next = b.whitelist(whitelist).build();
+            if (!next.write(file)) return;
+            base = next;
+            updates.clear();
+            removed.clear();
+        }
+    }
+
+    private static class LabelEntry {
+        final long lastUpdateTime;
+        final long versionCode;
+        final String label;
+        LabelEntry(long lastUpdateTime, long versionCode, String label) {
+            this.lastUpdateTime = lastUpdateTime;
+            this.versionCode = versionCode;
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.coara.whiteapp;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+
+public class ReconcileJobService extends JobService {
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        Metrics.global().increment("reconcile.job");
+        WhitelistEngine.get(this).reconcileInBackground(new Runnable() {
+            @Override
+            public void run() {
+                jobFinished(params, false);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        return true;
+    }
+}
@@ -0,0 +1,14 @@
+package com.coara.whiteapp;
+
+import java.util.HashSet;
+import java.util.Set;
+
+final class WhitelistDiff {
+    final Set<String> added = new HashSet<String>();
+    final Set<String> removed = new HashSet<String>();
+    boolean packagesReloaded;
+
+    boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+}
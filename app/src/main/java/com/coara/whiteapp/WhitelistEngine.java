@@ -0,0 +1,601 @@
+package com.coara.whiteapp;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide owner of the su shell, the observed and desired whitelist
+ * state, the installed package list, the foreground poll loop and the
+ * background reconcile schedule. Activities, the boot receiver and
+ * ReconcileJobService all go through the same instance, and every shell
+ * call runs on its single shell thread. Activities observe it through a
+ * {@link Listener} and never hand it anything that outlives them.
+ */
+final class WhitelistEngine {
+    private static final String TAG = "WhiteApp";
+    private static final String WHITELIST_FILE = "whitelist_sync.txt";
+    private static final String WHITELIST_JOURNAL_FILE = "whitelist_sync.journal";
+    private static final int WHITELIST_COMPACT_THRESHOLD = 256;
+    private static final int RECONCILE_JOB_ID = 1;
+    private static final long RECONCILE_JOB_PERIOD_MS = 6 * 60 * 60 * 1000L;
+    private static final long SYNC_INTERVAL_MIN = 15000;
+    private static final long SYNC_INTERVAL_MAX = 600000;
+    private static final int PACKAGE_PATCH_LIMIT = 20;
+    private static WhitelistEngine instance;
+
+    private final Context context;
+    private final ExecutorService shellExecutor = Executors.newSingleThreadExecutor();
+    private final SuShellManager shell = new SuShellManager();
+    private final WhitelistBackend backend;
+    private final WhitelistJournal journal;
+    private final DesiredWhitelist desired;
+    private final WhitelistReconciler reconciler;
+    private final WhitelistState whitelist = new WhitelistState();
+    private final PackageCatalog catalog;
+    private final Metrics metrics = Metrics.global();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private final AtomicInteger loadGeneration = new AtomicInteger();
+    private volatile Set<String> systemWhitelist = Collections.emptySet();
+    private boolean savedLoaded = false;
+    private Set<String> seeded;
+    private int clients = 0;
+    private volatile boolean rooted = false;
+
+    // Main thread only.
+    private Future<?> currentLoad;
+    private boolean rootReady = false;
+    private boolean cacheLoaded = false;
+    private boolean cacheReconciled = false;
+    private long syncInterval = SYNC_INTERVAL_MIN;
+    private boolean syncPaused = true;
+    private boolean syncInFlight = false;
+    private long lastSyncAt = 0;
+
+    /** Engine events, always delivered on the main thread. */
+    interface Listener {
+        /** The cached package list is published; {@code hasPackages} is false on a first run. */
+        void onCachedState(boolean hasPackages);
+
+        void onRootChecked(boolean rooted);
+
+        /** A sync finished; {@code diff.packagesReloaded} means the package list was replaced. */
+        void onStateChanged(WhitelistDiff diff);
+
+        /** Some packages were added, removed or updated in place. */
+        void onPackagesChanged();
+
+        void onLabelsChanged(List<String> packageNames);
+
+        /** The last {@link #loadPackages} could not read the package list; nothing was published. */
+        void onLoadFailed();
+
+        /** Every label of the last {@link #loadPackages} is resolved. */
+        void onLabelsResolved();
+
+        void onWhitelistUpdated(List<String> packageNames, boolean add, boolean ok);
+    }
+
+    private final Runnable syncRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (syncInFlight) return;
+            syncInFlight = true;
+            long now = SystemClock.elapsedRealtime();
+            if (lastSyncAt != 0) metrics.add("sync.skipped", Math.max(0, (now - lastSyncAt) / SYNC_INTERVAL_MIN - 1));
+            lastSyncAt = now;
+            metrics.increment("sync.executed");
+            try {
+                shellExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long t0 = System.nanoTime();
+                        final WhitelistDiff diff = syncWhitelistAndPackages(false);
+                        metrics.recordNanos("sync.cycle", System.nanoTime() - t0);
+                        if (!diff.isEmpty()) metrics.increment("sync.changed");
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                boolean changed = !diff.isEmpty() || diff.packagesReloaded;
+                                if (changed) {
+                                    for (Listener l : listeners) l.onStateChanged(diff);
+                                }
+                                onSyncFinished(changed);
+                            }
+                        });
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                syncInFlight = false;
+            }
+        }
+    };
+
+    private WhitelistEngine(Context context) {
+        this.context = context;
+        File dir = context.getFilesDir();
+        DeviceIdleBinderBackend binder = DeviceIdleBinderBackend.create();
+        ShellWhitelistBackend shellBackend = new ShellWhitelistBackend(shell);
+        backend = binder != null ? new FallbackWhitelistBackend(binder, shellBackend, false) : shellBackend;
+        journal = new WhitelistJournal(new File(dir, WHITELIST_FILE), new File(dir, WHITELIST_JOURNAL_FILE), WHITELIST_COMPACT_THRESHOLD);
+        desired = new DesiredWhitelist(dir);
+        reconciler = new WhitelistReconciler(backend, desired);
+        catalog = new PackageCatalog(context);
+    }
+
+    static synchronized WhitelistEngine get(Context context) {
+        if (instance == null) instance = new WhitelistEngine(context.getApplicationContext());
+        return instance;
+    }
+
+    Set<String> whitelist() {
+        return whitelist.get();
+    }
+
+    /** The current package list; replaced, never mutated. */
+    List<AppItem> packages() {
+        return catalog.items();
+    }
+
+    /** Packages exempted by the platform itself; removing them from the whitelist has no effect. */
+    Set<String> systemWhitelist() {
+        return systemWhitelist;
+    }
+
+    synchronized void attach() {
+        clients++;
+    }
+
+    synchronized void detach() {
+        if (--clients == 0) releaseShellWhenIdle();
+    }
+
+    /** Main thread only. */
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /** Main thread only. With no listener left, polling stops and label passes are abandoned. */
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+        if (!listeners.isEmpty()) return;
+        pausePolling();
+        loadGeneration.incrementAndGet();
+        if (currentLoad != null) currentLoad.cancel(false);
+    }
+
+    /**
+     * Publishes the cached list and checks for root in parallel. Once both
+     * have landed, the cached state is reconciled with the device once per
+     * process. Main thread only.
+     */
+    void start() {
+        catalog.cpuExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                AppSnapshot snapshot = catalog.loadCached();
+                if (snapshot == null) {
+                    loadSaved();
+                } else {
+                    seedWhitelist(snapshot.whitelist());
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean hasPackages = !catalog.items().isEmpty();
+                        for (Listener l : listeners) l.onCachedState(hasPackages);
+                        cacheLoaded = true;
+                        maybeReconcileCachedState();
+                    }
+                });
+            }
+        });
+        shellExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean ok = ensureRoot();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Listener l : listeners) l.onRootChecked(ok);
+                        if (!ok) return;
+                        scheduleReconcileJob();
+                        if (!rootReady) {
+                            rootReady = true;
+                            scheduleSync(syncInterval);
+                        }
+                        maybeReconcileCachedState();
+                    }
+                });
+            }
+        });
+    }
+
+    private void maybeReconcileCachedState() {
+        if (!rootReady || !cacheLoaded || cacheReconciled) return;
+        cacheReconciled = true;
+        if (catalog.items().isEmpty()) return;
+        try {
+            shellExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final WhitelistDiff diff = syncWhitelistAndPackages(true);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (Listener l : listeners) l.onStateChanged(diff);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    /** Loads the package list from scratch, then resolves missing labels in the background. Main thread only. */
+    void loadPackages() {
+        final int generation = loadGeneration.incrementAndGet();
+        final long startedAt = SystemClock.elapsedRealtime();
+        if (currentLoad != null) currentLoad.cancel(false);
+        try {
+            currentLoad = shellExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    List<AppItem> unresolved = new ArrayList<AppItem>();
+                    Map<String, PackageInfo> infos;
+                    WhitelistDiff result;
+                    try {
+                        catalog.markSequence();
+                        List<String> results = runChecked(PackageCatalog.SNAPSHOT_COMMANDS, 10000);
+                        if (!isCurrentLoad(generation)) return;
+                        result = refresh();
+                        infos = catalog.installedPackageInfos();
+                        if (!isCurrentLoad(generation)) return;
+                        catalog.publish(results, infos, unresolved);
+                    } catch (Throwable t) {
+                        metrics.increment("error.load");
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (!isCurrentLoad(generation)) return;
+                                for (Listener l : listeners) l.onLoadFailed();
+                            }
+                        });
+                        return;
+                    }
+                    if (!isCurrentLoad(generation)) return;
+                    metrics.recordNanos("load.first_row", (SystemClock.elapsedRealtime() - startedAt) * 1000000L);
+                    result.packagesReloaded = true;
+                    final WhitelistDiff diff = result;
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!isCurrentLoad(generation)) return;
+                            for (Listener l : listeners) l.onStateChanged(diff);
+                        }
+                    });
+                    resolveLabels(generation, startedAt, unresolved, infos);
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private boolean isCurrentLoad(int generation) {
+        return generation == loadGeneration.get();
+    }
+
+    private void resolveLabels(final int generation, final long startedAt, final List<AppItem> unresolved, Map<String, PackageInfo> infos) {
+        catalog.resolveLabels(unresolved, infos, new PackageCatalog.LabelListener() {
+            @Override
+            public boolean isCurrent() {
+                return isCurrentLoad(generation);
+            }
+
+            @Override
+            public void onLabels(final List<String> packageNames) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isCurrentLoad(generation)) return;
+                        for (Listener l : listeners) l.onLabelsChanged(packageNames);
+                    }
+                });
+            }
+
+            @Override
+            public void onDone() {
+                metrics.recordNanos("load.complete", (SystemClock.elapsedRealtime() - startedAt) * 1000000L);
+                catalog.save(whitelist.get());
+                if (unresolved.isEmpty()) return;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isCurrentLoad(generation)) return;
+                        for (Listener l : listeners) l.onLabelsResolved();
+                    }
+                });
+            }
+        });
+    }
+
+    /** Re-reads the given packages, or the whole list when there are many. */
+    void patchPackages(final List<String> packageNames) {
+        if (packageNames.isEmpty()) return;
+        try {
+            shellExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (catalog.items().isEmpty()) return;
+                    try {
+                        if (packageNames.size() > PACKAGE_PATCH_LIMIT) {
+                            syncWhitelistAndPackages(true);
+                        } else {
+                            applyPackagePatch(packageNames);
+                        }
+                    } catch (Throwable t) {
+                        metrics.increment("error.patch");
+                        return;
+                    }
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (Listener l : listeners) l.onPackagesChanged();
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private void applyPackagePatch(List<String> packageNames) {
+        List<String> valid = new ArrayList<String>();
+        String[] cmds = PackageCatalog.patchCommands(packageNames, valid);
+        List<String> results = runChecked(cmds, 10000);
+        List<String> gone = new ArrayList<String>();
+        catalog.applyPatch(valid, results, gone);
+        forgetPackages(gone);
+        catalog.save(whitelist.get());
+    }
+
+    /** Re-reads the device whitelist, plus the package list when forced or still empty. Shell thread only. */
+    private WhitelistDiff syncWhitelistAndPackages(boolean forceReloadPackages) {
+        WhitelistDiff diff = new WhitelistDiff();
+        try {
+            boolean reloadPackages = forceReloadPackages || catalog.items().isEmpty();
+            List<String> results = null;
+            if (reloadPackages) {
+                catalog.markSequence();
+                results = runChecked(PackageCatalog.SNAPSHOT_COMMANDS, 10000);
+            }
+            diff = refresh();
+            if (reloadPackages) {
+                catalog.reload(results);
+                diff.packagesReloaded = true;
+            }
+            if (reloadPackages || !diff.isEmpty()) catalog.save(whitelist.get());
+        } catch (Throwable t) {
+            metrics.increment("error.sync_snapshot");
+        }
+        return diff;
+    }
+
+    /** Applies a toggle from the UI on the shell thread and reports the outcome to listeners. */
+    void updateWhitelist(final List<String> packageNames, final boolean add) {
+        if (packageNames.isEmpty()) return;
+        try {
+            shellExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean result = false;
+                    try {
+                        update(packageNames, add);
+                        result = true;
+                    } catch (Throwable t) {
+                        metrics.increment("error.update");
+                    }
+                    final boolean ok = result;
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (Listener l : listeners) l.onWhitelistUpdated(packageNames, add, ok);
+                            if (ok) resetSyncBackoff();
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    /** Restarts polling right away and catches up on package changes missed while paused. Main thread only. */
+    void resumePolling() {
+        syncPaused = false;
+        syncInterval = SYNC_INTERVAL_MIN;
+        if (rootReady && !syncInFlight) scheduleSync(0);
+        patchPackages(catalog.changedPackages());
+    }
+
+    /** Main thread only. */
+    void pausePolling() {
+        syncPaused = true;
+        mainHandler.removeCallbacks(syncRunnable);
+    }
+
+    private void scheduleSync(long delay) {
+        if (syncPaused || !rootReady) return;
+        mainHandler.removeCallbacks(syncRunnable);
+        mainHandler.postDelayed(syncRunnable, delay);
+    }
+
+    private void onSyncFinished(boolean changed) {
+        syncInFlight = false;
+        syncInterval = changed ? SYNC_INTERVAL_MIN : Math.min(syncInterval * 2, SYNC_INTERVAL_MAX);
+        scheduleSync(syncInterval);
+    }
+
+    private void resetSyncBackoff() {
+        syncInterval = SYNC_INTERVAL_MIN;
+        if (!syncInFlight) scheduleSync(syncInterval);
+    }
+
+    /** Loads the persisted observed and desired state once per process. */
+    synchronized Set<String> loadSaved() {
+        if (!savedLoaded) {
+            savedLoaded = true;
+            Set<String> saved = journal.load();
+            desired.load(null);
+            Set<String> cur = whitelist.get();
+            if (cur.isEmpty() || cur == seeded) whitelist.compareAndSet(cur, saved);
+        }
+        return whitelist.get();
+    }
+
+    /** Publishes a cached whitelist for the first paint; the saved and live state replace it. */
+    synchronized void seedWhitelist(Set<String> cached) {
+        if (!savedLoaded && whitelist.compareAndSet(Collections.<String>emptySet(), cached)) seeded = whitelist.get();
+    }
+
+    /** Starts su and checks for root; the answer is cached for the process. Shell thread only. */
+    boolean ensureRoot() {
+        if (!shell.start()) return false;
+        if (rooted) return true;
+        SuShellManager.Result result = shell.run("echo root_test", 5000);
+        if (result.isSuccess()) {
+            for (String s : result.lines()) {
+                if ("root_test".equals(s != null ? s.trim() : null)) {
+                    rooted = true;
+                    break;
+                }
+            }
+        }
+        return rooted;
+    }
+
+    /** Reads the device whitelist, enforces the desired state and publishes the result. Shell thread only. */
+    WhitelistDiff refresh() {
+        loadSaved();
+        Set<String> system = new HashSet<String>();
+        Set<String> user = new HashSet<String>();
+        long t0 = System.nanoTime();
+        try {
+            int fixed = reconciler.reconcile(system, user);
+            if (fixed > 0) Log.i(TAG, "reconciled " + fixed + " whitelist entries");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        metrics.recordNanos("whitelist.query", System.nanoTime() - t0);
+        systemWhitelist = system;
+        Set<String> all = new HashSet<String>(system);
+        all.addAll(user);
+        WhitelistDiff diff = new WhitelistDiff();
+        whitelist.replace(all, diff.added, diff.removed);
+        journal.append(diff.added, diff.removed);
+        return diff;
+    }
+
+    /** Applies a user toggle and records it as desired state. Shell thread only. */
+    Set<String> update(List<String> packageNames, boolean add) throws IOException {
+        loadSaved();
+        reconciler.seed();
+        Set<String> none = Collections.emptySet();
+        backend.update(add ? packageNames : none, add ? none : packageNames);
+        desired.record(packageNames, add);
+        Set<String> changed = whitelist.change(packageNames, add);
+        journal.append(add ? changed : none, add ? none : changed);
+        return changed;
+    }
+
+    /** Stops enforcing desired state for packages that were uninstalled. */
+    void forgetPackages(Collection<String> packageNames) {
+        if (!packageNames.isEmpty()) desired.forget(packageNames);
+    }
+
+    List<String> runChecked(String[] commands, long timeoutMs) {
+        List<SuShellManager.Result> results = shell.runBatch(commands, timeoutMs);
+        List<String> out = new ArrayList<String>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            SuShellManager.Result r = results.get(i);
+            if (r.status == SuShellManager.Result.TIMEOUT) throw new IllegalStateException("timed out: " + commands[i]);
+            if (!r.isSuccess()) throw new IllegalStateException("failed: " + commands[i]);
+            out.add(r.output);
+        }
+        return out;
+    }
+
+    /** Runs one headless reconcile pass on the shell thread, then calls {@code done}. */
+    void reconcileInBackground(final Runnable done) {
+        try {
+            shellExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (ensureRoot()) refresh();
+                    } catch (Throwable t) {
+                        metrics.increment("error.reconcile_job");
+                    } finally {
+                        releaseShellWhenIdle();
+                        if (done != null) done.run();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (done != null) done.run();
+        }
+    }
+
+    void scheduleReconcileJob() {
+        try {
+            JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+            if (scheduler == null || scheduler.getPendingJob(RECONCILE_JOB_ID) != null) return;
+            JobInfo job = new JobInfo.Builder(RECONCILE_JOB_ID, new ComponentName(context, ReconcileJobService.class))
+                    .setPeriodic(RECONCILE_JOB_PERIOD_MS)
+                    .setRequiresCharging(true)
+                    .setRequiresDeviceIdle(true)
+                    .setPersisted(true)
+                    .build();
+            scheduler.schedule(job);
+        } catch (Throwable t) {
+            metrics.increment("error.schedule");
+        }
+    }
+
+    private void releaseShellWhenIdle() {
+        try {
+            shellExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (WhitelistEngine.this) {
+                        if (clients > 0) return;
+                    }
+                    shell.stop();
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.coara.whiteapp.benchmark;
+
+import com.coara.whiteapp.AppSnapshot;
+import com.coara.whiteapp.WhitelistFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold-start load of the binary snapshot against the previous text caches
+ * (app list + label cache + whitelist_sync.txt). Retained heap of both forms
+ * is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AppSnapshotBenchmark {
+    private static final String LOCALE = "ja_JP";
+
+    @Param({ "1000" })
+    public int packages;
+
+    private File dir;
+    private File snapshotFile;
+    private File appListFile;
+    private File labelFile;
+    private File whitelistFile;
+    private String[] names;
+    private AppSnapshot snapshot;
+    private LegacyState legacy;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = File.createTempFile("app_snapshot", "");
+        dir.delete();
+        dir.mkdir();
+        snapshotFile = new File(dir, "app_snapshot.bin");
+        appListFile = new File(dir, "app_list_cache.txt");
+        labelFile = new File(dir, "label_cache.txt");
+        whitelistFile = new File(dir, "whitelist_sync.txt");
+        names = new String[packages];
+        Set<String> whitelist = new HashSet<String>();
+        AppSnapshot.Builder b = new AppSnapshot.Builder(LOCALE);
+        BufferedWriter apps = writer(appListFile);
+        BufferedWriter labels = writer(labelFile);
+        apps.write("applist\t1\n");
+        labels.write("labelcache\t1\n" + LOCALE + "\n");
+        for (int i = 0; i < packages; i++) {
+            String pkg = Fixtures.packageName(i);
+            names[i] = pkg;
+            String label = Fixtures.label(i);
+            boolean system = i % 3 == 0;
+            boolean disabled = i % 17 == 0;
+            long lastUpdateTime = 1700000000000L + i;
+            long versionCode = 100 + i % 50;
+            if (i % 4 == 0) whitelist.add(pkg);
+            b.add(pkg, label, lastUpdateTime, versionCode, system, disabled);
+            apps.write(pkg + "\t" + (system ? 's' : '-') + (disabled ? 'd' : '-') + "\t" + label + "\n");
+            labels.write(pkg + "\t" + lastUpdateTime + "\t" + versionCode + "\t" + label + "\n");
+        }
+        apps.close();
+        labels.close();
+        WhitelistFile.save(whitelistFile, whitelist);
+        b.whitelist(whitelist).build().write(snapshotFile);
+        snapshot = AppSnapshot.read(snapshotFile);
+        legacy = loadLegacy(appListFile, labelFile, whitelistFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println("retained bytes for " + packages + " packages: snapshot="
+                + GraphLayout.parseInstance(snapshot).totalSize()
+                + " legacy=" + GraphLayout.parseInstance(legacy).totalSize());
+        snapshotFile.delete();
+        appListFile.delete();
+        labelFile.delete();
+        whitelistFile.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public AppSnapshot loadSnapshot() {
+        return AppSnapshot.read(snapshotFile);
+    }
+
+    @Benchmark
+    public LegacyState loadLegacy() throws IOException {
+        return loadLegacy(appListFile, labelFile, whitelistFile);
+    }
+
+    @Benchmark
+    public void labelLookupSnapshot(Blackhole bh) {
+        for (int i = 0; i < packages; i++) {
+            bh.consume(snapshot.labelIfCurrent(names[i], 1700000000000L + i, 100 + i % 50));
+        }
+    }
+
+    @Benchmark
+    public void labelLookupLegacy(Blackhole bh) {
+        for (int i = 0; i < packages; i++) {
+            LabelEntry e = legacy.labels.get(names[i]);
+            bh.consume(e != null && e.lastUpdateTime == 1700000000000L + i && e.versionCode == 100 + i % 50 ? e.label : null);
+        }
+    }
+
+    private static BufferedWriter writer(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    }
+
+    private static BufferedReader reader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    }
+
+    /** Same parsing as the text caches the app used before the snapshot. */
+    private static LegacyState loadLegacy(File appListFile, File labelFile, File whitelistFile) throws IOException {
+        LegacyState state = new LegacyState();
+        BufferedReader br = reader(appListFile);
+        try {
+            if ("applist\t1".equals(br.readLine())) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] f = line.split("\t", 3);
+                    if (f.length != 3 || f[1].length() != 2) continue;
+                    state.items.add(new LegacyItem(f[2], f[0], f[1].charAt(0) == 's', f[1].charAt(1) == 'd'));
+                }
+            }
+        } finally {
+            br.close();
+        }
+        br = reader(labelFile);
+        try {
+            if ("labelcache\t1".equals(br.readLine()) && LOCALE.equals(br.readLine())) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] f = line.split("\t", 4);
+                    if (f.length != 4) continue;
+                    state.labels.put(f[0], new LabelEntry(Long.parseLong(f[1]), Long.parseLong(f[2]), f[3]));
+                }
+            }
+        } finally {
+            br.close();
+        }
+        state.whitelist = WhitelistFile.load(whitelistFile);
+        return state;
+    }
+
+    public static final class LegacyState {
+        final List<LegacyItem> items = new ArrayList<LegacyItem>();
+        final Map<String, LabelEntry> labels = new HashMap<String, LabelEntry>();
+        Set<String> whitelist;
+    }
+
+    static final class LegacyItem {
+        volatile String appName;
+        final String packageName;
+        final boolean isSystem;
+        final boolean isDisabled;
+
+        LegacyItem(String appName, String packageName, boolean isSystem, boolean isDisabled) {
+            this.appName = appName;
+            this.packageName = packageName;
+            this.isSystem = isSystem;
+            this.isDisabled = isDisabled;
+        }
+    }
+
+    static final class LabelEntry {
+        final long lastUpdateTime;
+        final long versionCode;
+        final String label;
+
+        LabelEntry(long lastUpdateTime, long versionCode, String label) {
+            this.lastUpdateTime = lastUpdateTime;
+            this.versionCode = versionCode;
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.coara.whiteapp.benchmark;
+
+import com.coara.whiteapp.AppRowState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AppRowState.bind, the code AppAdapter.onBindViewHolder runs before it
+ * touches any View, repeated over a fling through the whole list. Run with
+ * the gc profiler (enabled in build.gradle): gc.alloc.rate.norm should stay
+ * at ~0 B/op. The View setters themselves need a device to measure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BindBenchmark {
+    private static final int ROWS = 400;
+
+    private final String[] labels = new String[ROWS];
+    private final String[] packages = new String[ROWS];
+    private final AppRowState rows = new AppRowState();
+    private final Holder holder = new Holder();
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        boolean[] whitelisted = new boolean[ROWS];
+        boolean[] systemExempt = new boolean[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            labels[i] = Fixtures.label(i);
+            packages[i] = Fixtures.packageName(i);
+            whitelisted[i] = i % 4 == 0;
+            systemExempt[i] = i % 20 == 0;
+            if (i % 25 == 0) rows.toggleSelected(packages[i]);
+        }
+        rows.replace(whitelisted, systemExempt);
+        holder.bh = bh;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void bindAllRows() {
+        for (int position = 0; position < ROWS; position++) {
+            rows.bind(position, labels[position], packages[position], holder);
+        }
+    }
+
+    static final class Holder implements AppRowState.Row {
+        Blackhole bh;
+
+        @Override
+        public void bind(CharSequence appName, CharSequence packageName, boolean selected, boolean checked, boolean enabled) {
+            bh.consume(appName);
+            bh.consume(packageName);
+            bh.consume(selected);
+            bh.consume(checked);
+            bh.consume(enabled);
+        }
+    }
+}
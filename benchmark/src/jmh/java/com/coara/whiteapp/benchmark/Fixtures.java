@@ -0,0 +1,40 @@
+package com.coara.whiteapp.benchmark;
+
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static String packageName(int i) {
+        switch (i % 4) {
+            case 0:
+                return "com.android.provider" + i;
+            case 1:
+                return "com.google.android.app" + i;
+            case 2:
+                return "jp.co.example.service_" + i;
+            default:
+                return "org.sample.app" + i + ".client";
+        }
+    }
+
+    static String label(int i) {
+        return i % 8 == 0 ? "Android System" : "サンプルアプリ " + i;
+    }
+
+    static String dumpsysWhitelist(int entries) {
+        StringBuilder sb = new StringBuilder(entries * 40);
+        for (int i = 0; i < entries; i++) {
+            String kind = i % 5 == 0 ? "system-excidle" : (i % 5 < 3 ? "system" : "user");
+            sb.append(kind).append(',').append(packageName(i)).append(',').append(10000 + i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static String pmListPackages(int entries) {
+        StringBuilder sb = new StringBuilder(entries * 32);
+        for (int i = 0; i < entries; i++) {
+            sb.append("package:").append(packageName(i)).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package com.coara.whiteapp.benchmark;
+
+import com.coara.whiteapp.WhitelistParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PackageListBenchmark {
+
+    @Param({ "100", "400", "1000" })
+    public int packages;
+
+    private String output;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        output = Fixtures.pmListPackages(packages);
+        names = new String[packages];
+        for (int i = 0; i < packages; i++) names[i] = Fixtures.packageName(i);
+    }
+
+    @Benchmark
+    public List<String> parsePackageLines() {
+        return WhitelistParser.parsePackageLines(output);
+    }
+
+    @Benchmark
+    public int isValidPackageName() {
+        int valid = 0;
+        for (String name : names) {
+            if (WhitelistParser.isValidPackageName(name)) valid++;
+        }
+        return valid;
+    }
+}
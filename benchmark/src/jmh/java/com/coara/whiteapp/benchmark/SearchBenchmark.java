@@ -0,0 +1,69 @@
+package com.coara.whiteapp.benchmark;
+
+import com.coara.whiteapp.AppSearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search-as-you-type over the shown list. typeQuery is the per-keystroke
+ * cost of AppSearchIndex.filter, and buildIndex is the per-list cost paid
+ * when the list is shown. Both should stay well under a 16 ms frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+    private static final String[] KEYSTROKES = { "s", "se", "ser", "serv", "servi", "servic", "service" };
+
+    @Param({ "400", "1000" })
+    public int rows;
+
+    private String[] labels;
+    private String[] packageNames;
+    private final Set<String> whitelist = new HashSet<String>();
+    private AppSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        labels = new String[rows];
+        packageNames = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            labels[i] = Fixtures.label(i);
+            packageNames[i] = Fixtures.packageName(i);
+            if (i % 4 == 0) whitelist.add(packageNames[i]);
+        }
+        index = new AppSearchIndex(labels, packageNames);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void typeQuery(Blackhole bh) {
+        bh.consume(index.filter("", AppSearchIndex.FILTER_ALL, whitelist));
+        for (String q : KEYSTROKES) {
+            bh.consume(index.filter(q, AppSearchIndex.FILTER_ALL, whitelist));
+        }
+    }
+
+    @Benchmark
+    public int[] filterWhitelisted() {
+        return index.filter("", AppSearchIndex.FILTER_WHITELISTED, whitelist);
+    }
+
+    @Benchmark
+    public AppSearchIndex buildIndex() {
+        return new AppSearchIndex(labels, packageNames);
+    }
+}
@@ -0,0 +1,53 @@
+package com.coara.whiteapp.benchmark;
+
+import com.coara.whiteapp.SuShellManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips through {@link SuShellManager} against a plain {@code /bin/sh}
+ * standing in for {@code su}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SuShellBenchmark {
+
+    private static final String[] BATCH = {
+            "echo a", "echo b", "echo c", "echo d", "echo e",
+            "echo f", "echo g", "echo h", "echo i", "echo j"
+    };
+
+    private SuShellManager shell;
+
+    @Setup
+    public void setUp() {
+        shell = new SuShellManager("/bin/sh");
+        if (!shell.start()) throw new IllegalStateException("cannot start /bin/sh");
+    }
+
+    @TearDown
+    public void tearDown() {
+        shell.stop();
+    }
+
+    @Benchmark
+    public List<String> exec() {
+        return shell.exec("echo ok", 5000);
+    }
+
+    @Benchmark
+    public List<List<String>> execBatch() {
+        return shell.execBatch(BATCH, 5000);
+    }
+}
@@ -0,0 +1,54 @@
+package com.coara.whiteapp.benchmark;
+
+import com.coara.whiteapp.WhitelistFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WhitelistFileBenchmark {
+
+    @Param({ "20", "200" })
+    public int packages;
+
+    private File file;
+    private Set<String> whitelist;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("whitelist_sync", ".txt");
+        whitelist = new HashSet<String>();
+        for (int i = 0; i < packages; i++) whitelist.add(Fixtures.packageName(i));
+        WhitelistFile.save(file, whitelist);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public void save() {
+        WhitelistFile.save(file, whitelist);
+    }
+
+    @Benchmark
+    public Set<String> load() {
+        return WhitelistFile.load(file);
+    }
+}
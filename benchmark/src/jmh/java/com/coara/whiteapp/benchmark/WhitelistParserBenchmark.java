@@ -0,0 +1,78 @@
+package com.coara.whiteapp.benchmark;
+
+import com.coara.whiteapp.WhitelistParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WhitelistParserBenchmark {
+
+    @Param({ "50", "500", "2000" })
+    public int entries;
+
+    private String output;
+    private List<String> lines;
+
+    @Setup
+    public void setUp() {
+        output = Fixtures.dumpsysWhitelist(entries);
+        lines = Arrays.asList(output.split("\n"));
+    }
+
+    @Benchmark
+    public void streaming(Blackhole bh) {
+        Set<String> system = new HashSet<String>();
+        Set<String> user = new HashSet<String>();
+        WhitelistParser.parse(output, system, user);
+        bh.consume(system);
+        bh.consume(user);
+    }
+
+    @Benchmark
+    public Set<String> legacySplit() {
+        Set<String> set = new HashSet<>();
+        for (String line : lines) {
+            if (line == null) continue;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) continue;
+            if (trimmed.startsWith("+")) {
+                String pkg = trimmed.substring(1).trim();
+                if (legacyIsValidPackageName(pkg)) set.add(pkg);
+                continue;
+            }
+            String[] parts = trimmed.split("[ ,\\[\\]]+");
+            for (String p : parts) {
+                if (legacyIsValidPackageName(p)) set.add(p);
+            }
+        }
+        return set;
+    }
+
+    private static boolean legacyIsValidPackageName(String s) {
+        if (s == null) return false;
+        s = s.trim();
+        if (!s.contains(".")) return false;
+        if (s.length() < 3) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '.')) return false;
+        }
+        return true;
+    }
+}
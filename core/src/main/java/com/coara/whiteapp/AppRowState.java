@@ -0,0 +1,67 @@
+package com.coara.whiteapp;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Per-position whitelist and system-exempt flags plus the long-press
+ * selection behind the app list adapter. {@link #bind} is the whole
+ * non-View part of onBindViewHolder and allocates nothing.
+ */
+public final class AppRowState {
+    private final Metrics metrics = Metrics.global();
+    private final Set<String> selected = new HashSet<String>();
+    private boolean[] whitelisted = new boolean[0];
+    private boolean[] systemExempt = new boolean[0];
+
+    /** The views of one row. */
+    public interface Row {
+        void bind(CharSequence appName, CharSequence packageName, boolean selected, boolean checked, boolean enabled);
+    }
+
+    public void bind(int position, String appName, String packageName, Row row) {
+        metrics.increment("adapter.bind");
+        row.bind(appName, packageName, selected.contains(packageName), whitelisted[position], !systemExempt[position]);
+    }
+
+    /** Takes ownership of both arrays. */
+    public void replace(boolean[] whitelisted, boolean[] systemExempt) {
+        this.whitelisted = whitelisted;
+        this.systemExempt = systemExempt;
+    }
+
+    public boolean isWhitelisted(int position) {
+        return whitelisted[position];
+    }
+
+    /** Returns false if the row already had that value. */
+    public boolean setWhitelisted(int position, boolean value) {
+        if (whitelisted[position] == value) return false;
+        whitelisted[position] = value;
+        return true;
+    }
+
+    public boolean[] whitelistedCopy() {
+        return whitelisted.clone();
+    }
+
+    /** Never modified in place, so it can be shared with a diff. */
+    public boolean[] systemExempt() {
+        return systemExempt;
+    }
+
+    public boolean isSelected(String packageName) {
+        return selected.contains(packageName);
+    }
+
+    public void toggleSelected(String packageName) {
+        if (!selected.remove(packageName)) selected.add(packageName);
+    }
+
+    /** Returns false if nothing was selected. */
+    public boolean clearSelection() {
+        if (selected.isEmpty()) return false;
+        selected.clear();
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+package com.coara.whiteapp;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Lower-cased label and package keys for the shown list. A query that
+ * extends the previous one only rescans the previous matches, so typing
+ * gets cheaper with every keystroke.
+ */
+public final class AppSearchIndex {
+    public static final int FILTER_ALL = 0;
+    public static final int FILTER_WHITELISTED = 1;
+    public static final int FILTER_NOT_WHITELISTED = 2;
+    private final String[] packageNames;
+    private final String[] keys;
+    private String lastQuery = "";
+    private int[] lastMatches;
+    private int lastCount;
+
+    public AppSearchIndex(String[] labels, String[] packageNames) {
+        this.packageNames = packageNames;
+        keys = new String[packageNames.length];
+        lastMatches = new int[packageNames.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (labels[i] + '\n' + packageNames[i]).toLowerCase(Locale.ROOT);
+            lastMatches[i] = i;
+        }
+        lastCount = keys.length;
+    }
+
+    /** Returns the matching positions, in list order. */
+    public synchronized int[] filter(String query, int mode, Set<String> whitelist) {
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        if (!q.equals(lastQuery)) {
+            boolean narrow = q.startsWith(lastQuery);
+            int count = narrow ? lastCount : keys.length;
+            int[] matches = new int[count];
+            int m = 0;
+            for (int i = 0; i < count; i++) {
+                int idx = narrow ? lastMatches[i] : i;
+                if (keys[idx].contains(q)) matches[m++] = idx;
+            }
+            lastQuery = q;
+            lastMatches = matches;
+            lastCount = m;
+        }
+        int[] out = new int[lastCount];
+        int n = 0;
+        for (int i = 0; i < lastCount; i++) {
+            int idx = lastMatches[i];
+            if (mode == FILTER_ALL || (mode == FILTER_WHITELISTED) == whitelist.contains(packageNames[idx])) out[n++] = idx;
+        }
+        if (n == out.length) return out;
+        int[] trimmed = new int[n];
+        System.arraycopy(out, 0, trimmed, 0, n);
+        return trimmed;
+    }
+}
@@ -0,0 +1,357 @@
+package com.coara.whiteapp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable app list + whitelist snapshot kept as an interned string table,
+ * parallel primitive arrays and flag bitsets, sorted by package name.
+ * The on-disk form mirrors the in-memory layout and is read with one read.
+ */
+public final class AppSnapshot {
+    private static final int MAGIC = 0x574c5331;
+    private static final int VERSION = 1;
+
+    private final String locale;
+    private final String[] strings;
+    private final int[] packages;
+    private final int[] labels;
+    private final long[] lastUpdateTimes;
+    private final long[] versionCodes;
+    private final long[] whitelistedBits;
+    private final long[] systemBits;
+    private final long[] disabledBits;
+    private final int[] extraWhitelist;
+
+    private AppSnapshot(String locale, String[] strings, int[] packages, int[] labels, long[] lastUpdateTimes, long[] versionCodes,
+                        long[] whitelistedBits, long[] systemBits, long[] disabledBits, int[] extraWhitelist) {
+        this.locale = locale;
+        this.strings = strings;
+        this.packages = packages;
+        this.labels = labels;
+        this.lastUpdateTimes = lastUpdateTimes;
+        this.versionCodes = versionCodes;
+        this.whitelistedBits = whitelistedBits;
+        this.systemBits = systemBits;
+        this.disabledBits = disabledBits;
+        this.extraWhitelist = extraWhitelist;
+    }
+
+    public String locale() {
+        return locale;
+    }
+
+    public int size() {
+        return packages.length;
+    }
+
+    public String packageName(int i) {
+        return strings[packages[i]];
+    }
+
+    public String label(int i) {
+        return strings[labels[i]];
+    }
+
+    public long lastUpdateTime(int i) {
+        return lastUpdateTimes[i];
+    }
+
+    public long versionCode(int i) {
+        return versionCodes[i];
+    }
+
+    public boolean isWhitelisted(int i) {
+        return bit(whitelistedBits, i);
+    }
+
+    public boolean isSystem(int i) {
+        return bit(systemBits, i);
+    }
+
+    public boolean isDisabled(int i) {
+        return bit(disabledBits, i);
+    }
+
+    public int indexOf(String packageName) {
+        int lo = 0;
+        int hi = packages.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = strings[packages[mid]].compareTo(packageName);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the cached label if the package has not been updated since it was stored. */
+    public String labelIfCurrent(String packageName, long lastUpdateTime, long versionCode) {
+        int i = indexOf(packageName);
+        if (i < 0 || lastUpdateTimes[i] != lastUpdateTime || versionCodes[i] != versionCode) return null;
+        return strings[labels[i]];
+    }
+
+    public Set<String> whitelist() {
+        Set<String> out = new HashSet<String>();
+        for (int i = 0; i < packages.length; i++) {
+            if (bit(whitelistedBits, i)) out.add(strings[packages[i]]);
+        }
+        for (int idx : extraWhitelist) out.add(strings[idx]);
+        return out;
+    }
+
+    private static boolean bit(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public boolean write(File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(tmp);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 16384));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, locale);
+            out.writeInt(strings.length);
+            for (String s : strings) writeString(out, s);
+            int n = packages.length;
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) out.writeInt(packages[i]);
+            for (int i = 0; i < n; i++) out.writeInt(labels[i]);
+            for (int i = 0; i < n; i++) out.writeLong(lastUpdateTimes[i]);
+            for (int i = 0; i < n; i++) out.writeLong(versionCodes[i]);
+            for (long w : whitelistedBits) out.writeLong(w);
+            for (long w : systemBits) out.writeLong(w);
+            for (long w : disabledBits) out.writeLong(w);
+            out.writeInt(extraWhitelist.length);
+            for (int idx : extraWhitelist) out.writeInt(idx);
+            out.flush();
+            fos.getFD().sync();
+            out.close();
+            fos = null;
+            return tmp.renameTo(file);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try {
+                if (fos != null) fos.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    public static AppSnapshot read(File file) {
+        byte[] data;
+        FileInputStream in = null;
+        try {
+            long len = file.length();
+            if (len < 12 || len > Integer.MAX_VALUE) return null;
+            data = new byte[(int) len];
+            in = new FileInputStream(file);
+            int off = 0;
+            int n;
+            while (off < data.length && (n = in.read(data, off, data.length - off)) > 0) off += n;
+            if (off != data.length) return null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            try {
+                if (in != null) in.close();
+            } catch (IOException e) {
+            }
+        }
+        try {
+            return decode(data);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static AppSnapshot decode(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+        String locale = readString(buf, data);
+        int stringCount = readCount(buf, 4);
+        if (stringCount < 0) return null;
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < strings.length; i++) strings[i] = readString(buf, data);
+        int n = readCount(buf, 24);
+        if (n < 0) return null;
+        int words = (n + 63) >>> 6;
+        int[] packages = new int[n];
+        int[] labels = new int[n];
+        long[] lastUpdateTimes = new long[n];
+        long[] versionCodes = new long[n];
+        long[] whitelisted = new long[words];
+        long[] system = new long[words];
+        long[] disabled = new long[words];
+        buf.asIntBuffer().get(packages);
+        buf.position(buf.position() + n * 4);
+        buf.asIntBuffer().get(labels);
+        buf.position(buf.position() + n * 4);
+        buf.asLongBuffer().get(lastUpdateTimes);
+        buf.position(buf.position() + n * 8);
+        buf.asLongBuffer().get(versionCodes);
+        buf.position(buf.position() + n * 8);
+        buf.asLongBuffer().get(whitelisted);
+        buf.position(buf.position() + words * 8);
+        buf.asLongBuffer().get(system);
+        buf.position(buf.position() + words * 8);
+        buf.asLongBuffer().get(disabled);
+        buf.position(buf.position() + words * 8);
+        int extraCount = readCount(buf, 4);
+        if (extraCount < 0) return null;
+        int[] extra = new int[extraCount];
+        buf.asIntBuffer().get(extra);
+        for (int i = 0; i < n; i++) {
+            if (!isIndex(packages[i], strings) || !isIndex(labels[i], strings)) return null;
+        }
+        for (int idx : extra) {
+            if (!isIndex(idx, strings)) return null;
+        }
+        return new AppSnapshot(locale, strings, packages, labels, lastUpdateTimes, versionCodes, whitelisted, system, disabled, extra);
+    }
+
+    /** Reads an element count; -1 if negative or more than the rest of the buffer can hold. */
+    private static int readCount(ByteBuffer buf, int minBytesEach) {
+        int count = buf.getInt();
+        return count >= 0 && count <= buf.remaining() / minBytesEach ? count : -1;
+    }
+
+    private static boolean isIndex(int idx, String[] strings) {
+        return idx >= 0 && idx < strings.length;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer buf, byte[] data) {
+        int len = buf.getInt();
+        String s = new String(data, buf.position(), len, StandardCharsets.UTF_8);
+        buf.position(buf.position() + len);
+        return s;
+    }
+
+    public static final class Builder {
+        private final String locale;
+        private final List<Entry> entries = new ArrayList<Entry>();
+        private final Set<String> whitelist = new HashSet<String>();
+
+        public Builder(String locale) {
+            this.locale = locale;
+        }
+
+        public Builder add(String packageName, String label, long lastUpdateTime, long versionCode, boolean system, boolean disabled) {
+            entries.add(new Entry(packageName, label, lastUpdateTime, versionCode, system, disabled));
+            return this;
+        }
+
+        public Builder whitelist(Set<String> packageNames) {
+            whitelist.addAll(packageNames);
+            return this;
+        }
+
+        public AppSnapshot build() {
+            Entry[] sorted = entries.toArray(new Entry[0]);
+            Arrays.sort(sorted, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    return a.packageName.compareTo(b.packageName);
+                }
+            });
+            Map<String, Integer> interned = new HashMap<String, Integer>();
+            List<String> strings = new ArrayList<String>();
+            int n = sorted.length;
+            int words = (n + 63) >>> 6;
+            int[] packages = new int[n];
+            int[] labels = new int[n];
+            long[] lastUpdateTimes = new long[n];
+            long[] versionCodes = new long[n];
+            long[] whitelisted = new long[words];
+            long[] system = new long[words];
+            long[] disabled = new long[words];
+            Set<String> listed = new HashSet<String>();
+            int count = 0;
+            for (Entry e : sorted) {
+                if (!listed.add(e.packageName)) continue;
+                int i = count++;
+                packages[i] = intern(e.packageName, interned, strings);
+                labels[i] = intern(e.label, interned, strings);
+                lastUpdateTimes[i] = e.lastUpdateTime;
+                versionCodes[i] = e.versionCode;
+                if (whitelist.contains(e.packageName)) whitelisted[i >>> 6] |= 1L << i;
+                if (e.system) system[i >>> 6] |= 1L << i;
+                if (e.disabled) disabled[i >>> 6] |= 1L << i;
+            }
+            List<String> extras = new ArrayList<String>();
+            for (String pkg : whitelist) {
+                if (!listed.contains(pkg)) extras.add(pkg);
+            }
+            int[] extra = new int[extras.size()];
+            for (int i = 0; i < extra.length; i++) extra[i] = intern(extras.get(i), interned, strings);
+            if (count < n) {
+                packages = Arrays.copyOf(packages, count);
+                labels = Arrays.copyOf(labels, count);
+                lastUpdateTimes = Arrays.copyOf(lastUpdateTimes, count);
+                versionCodes = Arrays.copyOf(versionCodes, count);
+                whitelisted = Arrays.copyOf(whitelisted, (count + 63) >>> 6);
+                system = Arrays.copyOf(system, (count + 63) >>> 6);
+                disabled = Arrays.copyOf(disabled, (count + 63) >>> 6);
+            }
+            return new AppSnapshot(locale, strings.toArray(new String[0]), packages, labels, lastUpdateTimes, versionCodes,
+                    whitelisted, system, disabled, extra);
+        }
+
+        private static int intern(String s, Map<String, Integer> interned, List<String> strings) {
+            Integer idx = interned.get(s);
+            if (idx == null) {
+                idx = strings.size();
+                strings.add(s);
+                interned.put(s, idx);
+            }
+            return idx;
+        }
+
+        private static final class Entry {
+            final String packageName;
+            final String label;
+            final long lastUpdateTime;
+            final long versionCode;
+            final boolean system;
+            final boolean disabled;
+
+            Entry(String packageName, String label, long lastUpdateTime, long versionCode, boolean system, boolean disabled) {
+                this.packageName = packageName;
+                this.label = label;
+                this.lastUpdateTime = lastUpdateTime;
+                this.versionCode = versionCode;
+                this.system = system;
+                this.disabled = disabled;
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.coara.whiteapp;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The whitelist the user asked for, persisted separately from what dumpsys
+ * last reported. Packages the user switched on are kept on, packages the user
+ * switched off are kept off, and everything else is left alone.
+ */
+public final class DesiredWhitelist {
+    private static final int COMPACT_THRESHOLD = 256;
+    private final File onFile;
+    private final WhitelistJournal on;
+    private final WhitelistJournal off;
+    private Set<String> onSet = Collections.emptySet();
+    private Set<String> offSet = Collections.emptySet();
+    private boolean loaded = false;
+
+    public DesiredWhitelist(File dir) {
+        onFile = new File(dir, "desired_on.txt");
+        on = new WhitelistJournal(onFile, new File(dir, "desired_on.journal"), COMPACT_THRESHOLD);
+        off = new WhitelistJournal(new File(dir, "desired_off.txt"), new File(dir, "desired_off.journal"), COMPACT_THRESHOLD);
+    }
+
+    /**
+     * Loads the persisted state. When nothing has been persisted yet the
+     * desired "on" set is seeded from {@code seed}, which should be the user
+     * entries dumpsys reported; a null seed leaves the state unloaded so that
+     * nothing is enforced.
+     */
+    public synchronized boolean load(Collection<String> seed) {
+        boolean fresh = !onFile.exists();
+        onSet = on.load();
+        offSet = off.load();
+        if (fresh) {
+            if (seed == null) return false;
+            on.append(seed, Collections.<String>emptySet());
+            on.compact();
+            onSet = new HashSet<String>(seed);
+        }
+        loaded = true;
+        return true;
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Drops packages from both sets, e.g. after they were uninstalled. */
+    public synchronized void forget(Collection<String> packageNames) {
+        if (!loaded) return;
+        Set<String> goneOn = new HashSet<String>();
+        Set<String> goneOff = new HashSet<String>();
+        for (String pkg : packageNames) {
+            if (onSet.remove(pkg)) goneOn.add(pkg);
+            if (offSet.remove(pkg)) goneOff.add(pkg);
+        }
+        Set<String> none = Collections.emptySet();
+        on.append(none, goneOn);
+        off.append(none, goneOff);
+    }
+
+    public synchronized void record(Collection<String> packageNames, boolean add) {
+        if (!loaded) return;
+        Set<String> none = Collections.emptySet();
+        if (add) {
+            on.append(packageNames, none);
+            off.append(none, packageNames);
+            onSet.addAll(packageNames);
+            offSet.removeAll(packageNames);
+        } else {
+            on.append(none, packageNames);
+            off.append(packageNames, none);
+            onSet.removeAll(packageNames);
+            offSet.addAll(packageNames);
+        }
+    }
+
+    /**
+     * Collects the +/- entries needed to reach the desired state. Desired
+     * entries that are exempt as system entries are dropped, since they are
+     * not the user's to enforce.
+     */
+    public synchronized void delta(Set<String> system, Set<String> user, List<String> add, List<String> remove) {
+        if (!loaded) return;
+        List<String> exempt = new ArrayList<String>();
+        for (String pkg : onSet) {
+            if (system.contains(pkg) && !user.contains(pkg)) {
+                exempt.add(pkg);
+            } else if (!user.contains(pkg)) {
+                add.add(pkg);
+            }
+        }
+        if (!exempt.isEmpty()) forget(exempt);
+        for (String pkg : offSet) {
+            if (user.contains(pkg)) remove.add(pkg);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.coara.whiteapp;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Tries the primary backend first and switches to the fallback for the rest
+ * of the process once a query or update on the primary fails. A primary
+ * that cannot write is given {@code primaryUpdates = false} so updates go
+ * straight to the fallback.
+ */
+public final class FallbackWhitelistBackend implements WhitelistBackend {
+    private final WhitelistBackend primary;
+    private final WhitelistBackend fallback;
+    private volatile boolean primaryQueries = true;
+    private volatile boolean primaryUpdates;
+
+    public FallbackWhitelistBackend(WhitelistBackend primary, WhitelistBackend fallback) {
+        this(primary, fallback, true);
+    }
+
+    public FallbackWhitelistBackend(WhitelistBackend primary, WhitelistBackend fallback, boolean primaryUpdates) {
+        this.primary = primary;
+        this.fallback = fallback;
+        this.primaryUpdates = primaryUpdates;
+    }
+
+    @Override
+    public void query(Set<String> system, Set<String> user) throws IOException {
+        if (primaryQueries) {
+            try {
+                primary.query(system, user);
+                return;
+            } catch (Throwable t) {
+                primaryQueries = false;
+                system.clear();
+                user.clear();
+                Metrics.global().increment("backend.fallback.query");
+            }
+        }
+        fallback.query(system, user);
+    }
+
+    @Override
+    public void update(Collection<String> add, Collection<String> remove) throws IOException {
+        if (primaryUpdates) {
+            try {
+                primary.update(add, remove);
+                return;
+            } catch (Throwable t) {
+                primaryUpdates = false;
+                Metrics.global().increment("backend.fallback.update");
+            }
+        }
+        fallback.update(add, remove);
+    }
+}
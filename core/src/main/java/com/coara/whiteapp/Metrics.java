@@ -0,0 +1,147 @@
+package com.coara.whiteapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide counters and latency histograms. Recording is lock-free so it
+ * can sit on the shell, sync and bind hot paths.
+ */
+public final class Metrics {
+    private static final Metrics GLOBAL = new Metrics();
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long delta) {
+        AtomicLong c = counters.get(name);
+        if (c == null) {
+            AtomicLong created = new AtomicLong();
+            c = counters.putIfAbsent(name, created);
+            if (c == null) c = created;
+        }
+        c.addAndGet(delta);
+    }
+
+    public long count(String name) {
+        AtomicLong c = counters.get(name);
+        return c != null ? c.get() : 0;
+    }
+
+    public Histogram histogram(String name) {
+        Histogram h = histograms.get(name);
+        if (h == null) {
+            Histogram created = new Histogram();
+            h = histograms.putIfAbsent(name, created);
+            if (h == null) h = created;
+        }
+        return h;
+    }
+
+    public void recordNanos(String name, long nanos) {
+        histogram(name).record(nanos);
+    }
+
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        List<String> names = new ArrayList<String>(counters.keySet());
+        Collections.sort(names);
+        sb.append("# counters\n");
+        for (String name : names) {
+            sb.append(name).append(' ').append(count(name)).append('\n');
+        }
+        names = new ArrayList<String>(histograms.keySet());
+        Collections.sort(names);
+        sb.append("# latency (ms)\n");
+        for (String name : names) {
+            Histogram h = histograms.get(name);
+            sb.append(name)
+                    .append(" n=").append(h.count())
+                    .append(" mean=").append(formatMicros(h.meanMicros()))
+                    .append(" p50=").append(formatMicros(h.percentileMicros(0.50)))
+                    .append(" p90=").append(formatMicros(h.percentileMicros(0.90)))
+                    .append(" p99=").append(formatMicros(h.percentileMicros(0.99)))
+                    .append(" max=").append(formatMicros(h.maxMicros()))
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String formatMicros(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+
+    /**
+     * Log-linear microsecond buckets: four sub-buckets per power of two, so any
+     * recorded value is reported within 25% of its true magnitude.
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 160;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sumMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        public void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            buckets.incrementAndGet(bucketOf(micros));
+            count.incrementAndGet();
+            sumMicros.addAndGet(micros);
+            long max;
+            while (micros > (max = maxMicros.get())) {
+                if (maxMicros.compareAndSet(max, micros)) break;
+            }
+        }
+
+        public long count() {
+            return count.get();
+        }
+
+        public long meanMicros() {
+            long n = count.get();
+            return n == 0 ? 0 : sumMicros.get() / n;
+        }
+
+        public long maxMicros() {
+            return maxMicros.get();
+        }
+
+        public long percentileMicros(double q) {
+            long n = count.get();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(upperBound(i), maxMicros.get());
+            }
+            return maxMicros.get();
+        }
+
+        static int bucketOf(long micros) {
+            if (micros < 8) return (int) micros;
+            int exp = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exp - 2)) & 3;
+            return Math.min(BUCKETS - 1, 4 * (exp - 1) + sub);
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < 8) return bucket;
+            int exp = bucket / 4 + 1;
+            int sub = bucket % 4;
+            return ((5L + sub) << (exp - 2)) - 1;
+        }
+    }
+}
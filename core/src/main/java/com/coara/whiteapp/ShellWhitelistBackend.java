@@ -0,0 +1,54 @@
+package com.coara.whiteapp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public final class ShellWhitelistBackend implements WhitelistBackend {
+    public static final String WHITELIST_COMMAND = "dumpsys deviceidle whitelist";
+    private static final int BATCH_SIZE = 50;
+    private static final long QUERY_TIMEOUT_MS = 10000;
+    private static final long UPDATE_TIMEOUT_MS = 8000;
+    private final SuShellManager shell;
+
+    public ShellWhitelistBackend(SuShellManager shell) {
+        this.shell = shell;
+    }
+
+    @Override
+    public void query(Set<String> system, Set<String> user) throws IOException {
+        SuShellManager.Result r = shell.run(WHITELIST_COMMAND, QUERY_TIMEOUT_MS);
+        if (!r.isSuccess()) throw new IOException("whitelist query " + (r.status == SuShellManager.Result.TIMEOUT ? "timed out" : "failed"));
+        WhitelistParser.parse(r.output, system, user);
+    }
+
+    @Override
+    public void update(Collection<String> add, Collection<String> remove) throws IOException {
+        if (add.isEmpty() && remove.isEmpty()) return;
+        for (SuShellManager.Result r : shell.runBatch(buildCommands(add, remove), UPDATE_TIMEOUT_MS)) {
+            if (!r.isSuccess()) throw new IOException("whitelist update " + (r.status == SuShellManager.Result.TIMEOUT ? "timed out" : "failed"));
+        }
+    }
+
+    static String[] buildCommands(Collection<String> add, Collection<String> remove) {
+        List<String> entries = new ArrayList<String>(add.size() + remove.size());
+        for (String pkg : add) entries.add("+" + pkg);
+        for (String pkg : remove) entries.add("-" + pkg);
+        List<String> cmds = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+        for (String entry : entries) {
+            if (count == 0) sb.append(WHITELIST_COMMAND);
+            sb.append(' ').append(entry);
+            if (++count == BATCH_SIZE) {
+                cmds.add(sb.toString());
+                sb.setLength(0);
+                count = 0;
+            }
+        }
+        if (count > 0) cmds.add(sb.toString());
+        return cmds.toArray(new String[0]);
+    }
+}
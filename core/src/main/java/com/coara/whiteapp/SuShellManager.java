@@ -0,0 +1,372 @@
+package com.coara.whiteapp;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SuShellManager {
+    private final String[] shellCommand;
+    private Process proc;
+    private DataOutputStream os;
+    private ArrayDeque<PendingCommand> pending;
+    private final Object lock = new Object();
+    private volatile boolean started = false;
+    private final Random rnd = new Random();
+    private volatile long restarts = 0;
+    private final Metrics metrics = Metrics.global();
+
+    public SuShellManager() {
+        this("su");
+    }
+
+    public SuShellManager(String... shellCommand) {
+        this.shellCommand = shellCommand;
+    }
+
+    public boolean start() {
+        synchronized (lock) {
+            if (started) return true;
+            try {
+                proc = Runtime.getRuntime().exec(shellCommand);
+                os = new DataOutputStream(proc.getOutputStream());
+                final ArrayDeque<PendingCommand> queue = new ArrayDeque<PendingCommand>();
+                final InputStreamReader in = new InputStreamReader(proc.getInputStream());
+                final BufferedReader err = new BufferedReader(new InputStreamReader(proc.getErrorStream()));
+                Thread outReader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        readStdout(in, queue);
+                        recycle(queue);
+                    }
+                }, "su-stdout");
+                Thread errReader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain(err);
+                    }
+                }, "su-stderr");
+                outReader.setDaemon(true);
+                errReader.setDaemon(true);
+                pending = queue;
+                outReader.start();
+                errReader.start();
+                started = true;
+                return true;
+            } catch (Throwable t) {
+                started = false;
+                try {
+                    if (os != null) os.close();
+                } catch (IOException e) {
+                }
+                if (proc != null) proc.destroy();
+                os = null;
+                proc = null;
+                pending = null;
+                return false;
+            }
+        }
+    }
+
+    public List<String> exec(String command, long timeoutMs) {
+        return execBatch(new String[] { command }, timeoutMs).get(0);
+    }
+
+    public List<List<String>> execBatch(String[] commands, long timeoutMs) {
+        List<Result> batch = runBatch(commands, timeoutMs);
+        List<List<String>> results = new ArrayList<List<String>>(commands.length);
+        for (Result r : batch) results.add(r.lines());
+        return results;
+    }
+
+    public Result run(String command, long timeoutMs) {
+        return runBatch(new String[] { command }, timeoutMs).get(0);
+    }
+
+    public List<Result> runBatch(String[] commands, long timeoutMs) {
+        PendingCommand[] cmds = submit(commands);
+        boolean timedOut = !awaitAll(cmds, timeoutMs);
+        List<Result> results = new ArrayList<Result>(commands.length);
+        long prevCompletedAt = 0;
+        for (int i = 0; i < cmds.length; i++) {
+            PendingCommand cmd = cmds[i];
+            if (cmd == null) {
+                results.add(new Result(Result.FAILED, ""));
+                metrics.increment("shell.failed");
+            } else if (!cmd.isDone()) {
+                results.add(new Result(Result.TIMEOUT, cmd.text()));
+                metrics.increment("shell.timeout");
+            } else {
+                results.add(new Result(cmd.isSucceeded() ? Result.SUCCESS : Result.FAILED, cmd.text()));
+                if (cmd.isSucceeded()) {
+                    metrics.recordNanos("shell " + commandKind(commands[i]), cmd.completedAt - Math.max(cmd.submittedAt, prevCompletedAt));
+                } else {
+                    metrics.increment("shell.failed");
+                }
+                prevCompletedAt = cmd.completedAt;
+            }
+        }
+        if (timedOut && cmds.length > 0 && cmds[0] != null) recycle(cmds[0].queue);
+        return results;
+    }
+
+    public boolean isAlive() {
+        synchronized (lock) {
+            return started && isRunning(proc);
+        }
+    }
+
+    public long getRestartCount() {
+        return restarts;
+    }
+
+    private static boolean awaitAll(PendingCommand[] cmds, long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (PendingCommand cmd : cmds) {
+            if (cmd == null) continue;
+            try {
+                if (!cmd.await(Math.max(0, deadline - System.currentTimeMillis()))) return false;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String commandKind(String command) {
+        int words = 0;
+        int end = 0;
+        int len = command.length();
+        while (end < len && words < 3) {
+            while (end < len && command.charAt(end) == ' ') end++;
+            if (end == len) break;
+            while (end < len && command.charAt(end) != ' ') end++;
+            words++;
+        }
+        String kind = command.substring(0, end).trim();
+        return end < command.trim().length() ? kind + " ..." : kind;
+    }
+
+    private static boolean isRunning(Process p) {
+        if (p == null) return false;
+        try {
+            p.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    private void recycle(ArrayDeque<PendingCommand> queue) {
+        synchronized (lock) {
+            if (pending != queue) return;
+            restarts++;
+            metrics.increment("shell.restart");
+            stop();
+        }
+    }
+
+    PendingCommand[] submit(String[] commands) {
+        PendingCommand[] cmds = new PendingCommand[commands.length];
+        synchronized (lock) {
+            if (started && !isRunning(proc)) {
+                restarts++;
+                metrics.increment("shell.restart");
+                stop();
+            }
+            if (!started) {
+                if (!start()) return cmds;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < commands.length; i++) {
+                String marker = "__END__" + Long.toHexString(System.nanoTime()) + Integer.toHexString(rnd.nextInt());
+                cmds[i] = new PendingCommand(marker, pending);
+                sb.append(commands[i]).append('\n');
+                sb.append("echo ").append(marker).append('\n');
+            }
+            synchronized (pending) {
+                for (PendingCommand cmd : cmds) pending.addLast(cmd);
+            }
+            try {
+                os.writeBytes(sb.toString());
+                os.flush();
+            } catch (Throwable t) {
+                for (PendingCommand cmd : cmds) cmd.complete(false);
+            }
+        }
+        return cmds;
+    }
+
+    private static void readStdout(InputStreamReader in, ArrayDeque<PendingCommand> queue) {
+        char[] buf = new char[8192];
+        PendingCommand head = null;
+        boolean discarding = false;
+        try {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                int off = 0;
+                while (off < n) {
+                    int nl = off;
+                    while (nl < n && buf[nl] != '\n') nl++;
+                    boolean lineEnd = nl < n;
+                    if (head == null && !discarding) {
+                        synchronized (queue) {
+                            head = queue.peekFirst();
+                        }
+                        if (head == null) discarding = true;
+                    }
+                    if (discarding) {
+                        if (lineEnd) discarding = false;
+                    } else if (head.append(buf, off, nl - off, lineEnd)) {
+                        synchronized (queue) {
+                            queue.pollFirst();
+                        }
+                        head.complete(true);
+                        head = null;
+                    }
+                    off = nl + 1;
+                }
+            }
+        } catch (IOException e) {
+        } finally {
+            synchronized (queue) {
+                while (!queue.isEmpty()) queue.pollFirst().complete(false);
+            }
+            try {
+                in.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    private static void drain(BufferedReader err) {
+        try {
+            while (err.readLine() != null) {
+            }
+        } catch (IOException e) {
+        } finally {
+            try {
+                err.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    public void stop() {
+        synchronized (lock) {
+            try {
+                if (os != null) {
+                    try {
+                        os.writeBytes("exit\n");
+                        os.flush();
+                    } catch (Throwable ignored) {
+                    }
+                }
+            } catch (Throwable t) {
+            } finally {
+                try {
+                    if (os != null) os.close();
+                } catch (IOException e) {
+                }
+                if (proc != null) proc.destroy();
+                os = null;
+                proc = null;
+                pending = null;
+                started = false;
+            }
+        }
+    }
+
+    public static final class Result {
+        public static final int SUCCESS = 0;
+        public static final int FAILED = 1;
+        public static final int TIMEOUT = 2;
+        public final int status;
+        public final String output;
+
+        Result(int status, String output) {
+            this.status = status;
+            this.output = output;
+        }
+
+        public boolean isSuccess() {
+            return status == SUCCESS;
+        }
+
+        public List<String> lines() {
+            List<String> lines = new ArrayList<String>();
+            int pos = 0;
+            int nl;
+            while ((nl = output.indexOf('\n', pos)) >= 0) {
+                lines.add(output.substring(pos, nl));
+                pos = nl + 1;
+            }
+            return lines;
+        }
+    }
+
+    private static final class PendingCommand {
+        final String marker;
+        final ArrayDeque<PendingCommand> queue;
+        private final StringBuilder out = new StringBuilder();
+        private int lineStart = 0;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean succeeded = false;
+        final long submittedAt = System.nanoTime();
+        volatile long completedAt;
+
+        PendingCommand(String marker, ArrayDeque<PendingCommand> queue) {
+            this.marker = marker;
+            this.queue = queue;
+        }
+
+        synchronized boolean append(char[] buf, int off, int len, boolean lineEnd) {
+            out.append(buf, off, len);
+            if (!lineEnd) return false;
+            int end = out.length();
+            int m = marker.length();
+            boolean isMarker = end - lineStart >= m;
+            for (int i = 0; isMarker && i < m; i++) {
+                if (out.charAt(end - m + i) != marker.charAt(i)) isMarker = false;
+            }
+            if (isMarker) {
+                out.setLength(end - m);
+                if (out.length() > lineStart) out.append('\n');
+            } else {
+                out.append('\n');
+            }
+            lineStart = out.length();
+            return isMarker;
+        }
+
+        synchronized String text() {
+            return out.substring(0, lineStart);
+        }
+
+        synchronized void complete(boolean ok) {
+            if (isDone()) return;
+            completedAt = System.nanoTime();
+            succeeded = ok;
+            done.countDown();
+        }
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        boolean isSucceeded() {
+            return succeeded;
+        }
+
+        boolean await(long timeoutMs) throws InterruptedException {
+            return done.await(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.coara.whiteapp;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Reads and edits the deviceidle power-save whitelist. Implementations throw
+ * instead of returning partial data so callers never apply a truncated list.
+ */
+public interface WhitelistBackend {
+    void query(Set<String> system, Set<String> user) throws IOException;
+
+    /** Applies all additions and removals in as few round trips as the backend allows. */
+    void update(Collection<String> add, Collection<String> remove) throws IOException;
+}
@@ -0,0 +1,64 @@
+package com.coara.whiteapp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+public final class WhitelistFile {
+    private WhitelistFile() {
+    }
+
+    public static boolean save(File file, Collection<String> packages) {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = null;
+        BufferedWriter bw = null;
+        try {
+            fos = new FileOutputStream(tmp);
+            bw = new BufferedWriter(new OutputStreamWriter(fos));
+            for (String pkg : packages) {
+                bw.write(pkg);
+                bw.newLine();
+            }
+            bw.flush();
+            fos.getFD().sync();
+            bw.close();
+            bw = null;
+            return tmp.renameTo(file);
+        } catch (Exception e) {
+            return false;
+        } finally {
+            try {
+                if (bw != null) bw.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    public static Set<String> load(File file) {
+        Set<String> packages = new HashSet<String>();
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+            String line;
+            while ((line = br.readLine()) != null) {
+                String t = line.trim();
+                if (!t.isEmpty() && WhitelistParser.isValidPackageName(t)) packages.add(t);
+            }
+        } catch (Exception e) {
+        } finally {
+            try {
+                if (br != null) br.close();
+            } catch (IOException e) {
+            }
+        }
+        return packages;
+    }
+}
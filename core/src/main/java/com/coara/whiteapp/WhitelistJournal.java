@@ -0,0 +1,126 @@
+package com.coara.whiteapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Persists the whitelist as a snapshot file plus an append-only journal of
+ * {@code +pkg}/{@code -pkg} lines. The journal is folded back into the
+ * snapshot once it grows past the compaction threshold.
+ */
+public final class WhitelistJournal {
+    private final File snapshotFile;
+    private final File journalFile;
+    private final int compactThreshold;
+    private final Set<String> state = new HashSet<String>();
+    private int journalEntries = 0;
+
+    public WhitelistJournal(File snapshotFile, File journalFile, int compactThreshold) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        this.compactThreshold = compactThreshold;
+    }
+
+    public synchronized Set<String> load() {
+        state.clear();
+        state.addAll(WhitelistFile.load(snapshotFile));
+        journalEntries = replay(journalFile, state);
+        // Also compacts a journal holding only a torn last line, which the next append would extend.
+        if (journalFile.exists()) compact();
+        return new HashSet<String>(state);
+    }
+
+    public synchronized void append(Collection<String> added, Collection<String> removed) {
+        if (added.isEmpty() && removed.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        int entries = 0;
+        for (String pkg : added) {
+            if (state.add(pkg)) {
+                sb.append('+').append(pkg).append('\n');
+                entries++;
+            }
+        }
+        for (String pkg : removed) {
+            if (state.remove(pkg)) {
+                sb.append('-').append(pkg).append('\n');
+                entries++;
+            }
+        }
+        if (entries == 0) return;
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(journalFile, true);
+            fos.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+            journalEntries += entries;
+        } catch (IOException e) {
+        } finally {
+            try {
+                if (fos != null) fos.close();
+            } catch (IOException e) {
+            }
+        }
+        if (journalEntries >= compactThreshold) compact();
+    }
+
+    public synchronized void compact() {
+        if (WhitelistFile.save(snapshotFile, state)) {
+            journalFile.delete();
+            journalEntries = 0;
+        }
+    }
+
+    private static int replay(File journal, Set<String> state) {
+        byte[] data = readFully(journal);
+        if (data == null) return 0;
+        String text = new String(data, StandardCharsets.UTF_8);
+        int entries = 0;
+        int pos = 0;
+        int nl;
+        while ((nl = text.indexOf('\n', pos)) >= 0) {
+            if (nl - pos > 1) {
+                char op = text.charAt(pos);
+                String pkg = text.substring(pos + 1, nl);
+                if (WhitelistParser.isValidPackageName(pkg)) {
+                    if (op == '+') {
+                        state.add(pkg);
+                        entries++;
+                    } else if (op == '-') {
+                        state.remove(pkg);
+                        entries++;
+                    }
+                }
+            }
+            pos = nl + 1;
+        }
+        return entries;
+    }
+
+    private static byte[] readFully(File file) {
+        if (!file.exists()) return null;
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) != -1) out.write(buf, 0, n);
+            return out.toByteArray();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            try {
+                if (in != null) in.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+}
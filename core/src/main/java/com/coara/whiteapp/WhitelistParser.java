@@ -0,0 +1,134 @@
+package com.coara.whiteapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public final class WhitelistParser {
+    private WhitelistParser() {
+    }
+
+    /**
+     * Splits dumpsys deviceidle output into fully exempt system entries and
+     * user entries. system-excidle lines are skipped: those packages are
+     * still restricted by Doze and can be added as user entries.
+     */
+    public static void parse(CharSequence text, Set<String> system, Set<String> user) {
+        int len = text.length();
+        int pos = 0;
+        while (pos < len) {
+            int end = pos;
+            while (end < len && text.charAt(end) != '\n') end++;
+            parseLine(text, pos, end, system, user);
+            pos = end + 1;
+        }
+    }
+
+    private static void parseLine(CharSequence text, int start, int end, Set<String> system, Set<String> user) {
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        if (start == end) return;
+        if (text.charAt(start) == '+') {
+            int s = start + 1;
+            while (s < end && text.charAt(s) <= ' ') s++;
+            addIfValid(text, s, end, user);
+            return;
+        }
+        int comma = start;
+        while (comma < end && text.charAt(comma) != ',') comma++;
+        if (comma < end) {
+            if (regionEquals(text, start, comma, "system-excidle")) return;
+            Set<String> target = null;
+            if (regionEquals(text, start, comma, "system")) {
+                target = system;
+            } else if (regionEquals(text, start, comma, "user")) {
+                target = user;
+            }
+            if (target != null) {
+                int s = comma + 1;
+                int e = s;
+                while (e < end && text.charAt(e) != ',') e++;
+                addIfValid(text, s, e, target);
+                return;
+            }
+        }
+        int s = start;
+        while (s < end) {
+            while (s < end && isDelimiter(text.charAt(s))) s++;
+            int e = s;
+            while (e < end && !isDelimiter(text.charAt(e))) e++;
+            addIfValid(text, s, e, user);
+            s = e;
+        }
+    }
+
+    private static void addIfValid(CharSequence text, int start, int end, Set<String> target) {
+        if (isValidPackageName(text, start, end)) target.add(text.subSequence(start, end).toString());
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == ' ' || c == ',' || c == '[' || c == ']' || c == '\t';
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, int end, String s) {
+        if (end - start != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (text.charAt(start + i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public static boolean isValidPackageName(CharSequence text, int start, int end) {
+        if (end - start < 3) return false;
+        boolean dot = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                dot = true;
+            } else if (!(Character.isLetterOrDigit(c) || c == '_')) {
+                return false;
+            }
+        }
+        return dot;
+    }
+
+    public static boolean isValidPackageName(String s) {
+        if (s == null) return false;
+        s = s.trim();
+        return isValidPackageName(s, 0, s.length());
+    }
+
+    public static List<String> parsePackageLines(CharSequence pmOutput) {
+        List<String> packages = new ArrayList<String>();
+        int len = pmOutput.length();
+        int pos = 0;
+        while (pos < len) {
+            int end = pos;
+            while (end < len && pmOutput.charAt(end) != '\n') end++;
+            int s = pos;
+            int e = end;
+            while (s < e && pmOutput.charAt(s) <= ' ') s++;
+            if (startsWith(pmOutput, s, e, "package:")) s += 8;
+            for (int i = s; i < e; i++) {
+                if (pmOutput.charAt(i) == '=') {
+                    if (i > s) e = i;
+                    break;
+                }
+            }
+            while (s < e && pmOutput.charAt(s) <= ' ') s++;
+            while (e > s && pmOutput.charAt(e - 1) <= ' ') e--;
+            if (e > s) packages.add(pmOutput.subSequence(s, e).toString());
+            pos = end + 1;
+        }
+        return packages;
+    }
+
+    private static boolean startsWith(CharSequence text, int start, int end, String prefix) {
+        int n = prefix.length();
+        if (end - start < n) return false;
+        for (int i = 0; i < n; i++) {
+            if (text.charAt(start + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+}
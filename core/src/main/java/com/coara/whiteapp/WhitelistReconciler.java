@@ -0,0 +1,83 @@
+package com.coara.whiteapp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Brings the device whitelist back to {@link DesiredWhitelist} with the
+ * smallest +/- batch, e.g. after an OTA or reboot cleared user entries.
+ */
+public final class WhitelistReconciler {
+    private final WhitelistBackend backend;
+    private final DesiredWhitelist desired;
+    private final Metrics metrics = Metrics.global();
+
+    public WhitelistReconciler(WhitelistBackend backend, DesiredWhitelist desired) {
+        this.backend = backend;
+        this.desired = desired;
+    }
+
+    /** Seeds the desired state from the device's user entries if nothing was persisted yet. */
+    public void seed() throws IOException {
+        if (desired.isLoaded()) return;
+        Set<String> system = new HashSet<String>();
+        Set<String> user = new HashSet<String>();
+        backend.query(system, user);
+        desired.load(user);
+    }
+
+    /**
+     * Reads the observed whitelist into {@code system} and {@code user},
+     * pushes any drift back to the desired state in one batch and leaves the
+     * two sets describing the device as re-read after enforcement. Entries
+     * the device refused, such as packages that are no longer installed, are
+     * dropped from the desired state so later passes settle. Returns the
+     * number of entries that were corrected.
+     */
+    public int reconcile(Set<String> system, Set<String> user) throws IOException {
+        backend.query(system, user);
+        if (!desired.isLoaded()) desired.load(user);
+        List<String> add = new ArrayList<String>();
+        List<String> remove = new ArrayList<String>();
+        desired.delta(system, user, add, remove);
+        metrics.increment("reconcile.runs");
+        if (add.isEmpty() && remove.isEmpty()) return 0;
+        metrics.add("reconcile.drift", add.size() + remove.size());
+        try {
+            backend.update(add, remove);
+        } catch (IOException e) {
+            metrics.increment("reconcile.failed");
+            return 0;
+        }
+        system.clear();
+        user.clear();
+        backend.query(system, user);
+        List<String> rejected = new ArrayList<String>();
+        int added = 0;
+        int removed = 0;
+        for (String pkg : add) {
+            if (user.contains(pkg)) {
+                added++;
+            } else {
+                rejected.add(pkg);
+            }
+        }
+        for (String pkg : remove) {
+            if (!user.contains(pkg)) {
+                removed++;
+            } else {
+                rejected.add(pkg);
+            }
+        }
+        metrics.add("reconcile.added", added);
+        metrics.add("reconcile.removed", removed);
+        if (!rejected.isEmpty()) {
+            desired.forget(rejected);
+            metrics.add("reconcile.rejected", rejected.size());
+        }
+        return added + removed;
+    }
+}
@@ -0,0 +1,49 @@
+package com.coara.whiteapp;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The published whitelist as an immutable set swapped atomically, so
+ * readers on any thread get a consistent snapshot without locking.
+ */
+public final class WhitelistState {
+    private final AtomicReference<Set<String>> current = new AtomicReference<Set<String>>(Collections.<String>emptySet());
+
+    public Set<String> get() {
+        return current.get();
+    }
+
+    /** Publishes {@code next} only if the current snapshot is still {@code expected}. */
+    public boolean compareAndSet(Set<String> expected, Set<String> next) {
+        return current.compareAndSet(expected, Collections.unmodifiableSet(next));
+    }
+
+    /** Adds or removes packages and returns the ones that actually changed. */
+    public Set<String> change(Collection<String> packageNames, boolean add) {
+        while (true) {
+            Set<String> prev = current.get();
+            Set<String> next = new HashSet<String>(prev);
+            Set<String> changed = new HashSet<String>();
+            for (String pkg : packageNames) {
+                if (add ? next.add(pkg) : next.remove(pkg)) changed.add(pkg);
+            }
+            if (changed.isEmpty() || current.compareAndSet(prev, Collections.unmodifiableSet(next))) return changed;
+        }
+    }
+
+    /** Replaces the whole set and collects what was added and removed relative to the previous snapshot. */
+    public void replace(Set<String> all, Set<String> added, Set<String> removed) {
+        Set<String> next = Collections.unmodifiableSet(new HashSet<String>(all));
+        Set<String> prev = current.getAndSet(next);
+        for (String pkg : next) {
+            if (!prev.contains(pkg)) added.add(pkg);
+        }
+        for (String pkg : prev) {
+            if (!next.contains(pkg)) removed.add(pkg);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.coara.whiteapp;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class AppSearchIndexTest {
+    private final AppSearchIndex index = new AppSearchIndex(
+            new String[] { "Camera", "Calendar", "Maps" },
+            new String[] { "com.example.camera", "com.example.calendar", "com.example.maps" });
+
+    @Test
+    public void narrowingAndWideningQueriesMatchLabelsAndPackages() {
+        Set<String> none = Collections.emptySet();
+        assertArrayEquals(new int[] { 0, 1 }, index.filter("ca", AppSearchIndex.FILTER_ALL, none));
+        assertArrayEquals(new int[] { 0 }, index.filter("CAM", AppSearchIndex.FILTER_ALL, none));
+        assertArrayEquals(new int[] { 0, 1, 2 }, index.filter("example", AppSearchIndex.FILTER_ALL, none));
+        assertArrayEquals(new int[] { 0, 1, 2 }, index.filter(" ", AppSearchIndex.FILTER_ALL, none));
+    }
+
+    @Test
+    public void modeSplitsOnTheWhitelist() {
+        Set<String> whitelist = new HashSet<String>();
+        whitelist.add("com.example.calendar");
+        assertArrayEquals(new int[] { 1 }, index.filter("", AppSearchIndex.FILTER_WHITELISTED, whitelist));
+        assertArrayEquals(new int[] { 0, 2 }, index.filter("", AppSearchIndex.FILTER_NOT_WHITELISTED, whitelist));
+    }
+}
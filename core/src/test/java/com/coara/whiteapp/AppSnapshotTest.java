@@ -0,0 +1,96 @@
+package com.coara.whiteapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AppSnapshotTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File write() throws IOException {
+        File file = new File(tmp.newFolder(), "app_snapshot.bin");
+        new AppSnapshot.Builder("ja_JP")
+                .add("com.example.a", "A", 1L, 2L, false, false)
+                .whitelist(Collections.singleton("com.example.a"))
+                .build()
+                .write(file);
+        return file;
+    }
+
+    /** Offset of the string count, right after the magic, version and locale. */
+    private static int stringCountOffset(byte[] data) {
+        return 12 + ByteBuffer.wrap(data).getInt(8);
+    }
+
+    /** Offset of the package count, right after the string table. */
+    private static int packageCountOffset(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        int pos = stringCountOffset(data);
+        int strings = buf.getInt(pos);
+        pos += 4;
+        for (int i = 0; i < strings; i++) pos += 4 + buf.getInt(pos);
+        return pos;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void putInt(File file, int offset, int value) throws IOException {
+        byte[] data = read(file);
+        ByteBuffer.wrap(data).putInt(offset, value);
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        AppSnapshot snapshot = AppSnapshot.read(write());
+        assertEquals(1, snapshot.size());
+        assertEquals("com.example.a", snapshot.packageName(0));
+        assertEquals("A", snapshot.labelIfCurrent("com.example.a", 1L, 2L));
+    }
+
+    @Test
+    public void negativeStringIndexIsRejected() throws IOException {
+        File file = write();
+        putInt(file, packageCountOffset(read(file)) + 4, -1);
+        assertNull(AppSnapshot.read(file));
+    }
+
+    @Test
+    public void negativeOrOversizedCountsAreRejected() throws IOException {
+        File file = write();
+        int strings = stringCountOffset(read(file));
+        putInt(file, strings, -1);
+        assertNull(AppSnapshot.read(file));
+        file = write();
+        putInt(file, packageCountOffset(read(file)), Integer.MAX_VALUE);
+        assertNull(AppSnapshot.read(file));
+        file = write();
+        putInt(file, packageCountOffset(read(file)), -5);
+        assertNull(AppSnapshot.read(file));
+    }
+}
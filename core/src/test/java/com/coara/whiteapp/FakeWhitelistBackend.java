@@ -0,0 +1,35 @@
+package com.coara.whiteapp;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/** In-memory deviceidle whitelist; only installed packages can be added. */
+class FakeWhitelistBackend implements WhitelistBackend {
+    final Set<String> system = new HashSet<String>();
+    final Set<String> user = new HashSet<String>();
+    final Set<String> installed = new HashSet<String>();
+    int queries;
+    int updates;
+    boolean failQueries;
+    boolean failUpdates;
+
+    @Override
+    public synchronized void query(Set<String> systemOut, Set<String> userOut) throws IOException {
+        queries++;
+        if (failQueries) throw new IOException("query failed");
+        systemOut.addAll(system);
+        userOut.addAll(user);
+    }
+
+    @Override
+    public synchronized void update(Collection<String> add, Collection<String> remove) throws IOException {
+        updates++;
+        if (failUpdates) throw new IOException("update failed");
+        for (String pkg : add) {
+            if (installed.contains(pkg)) user.add(pkg);
+        }
+        user.removeAll(remove);
+    }
+}
@@ -0,0 +1,75 @@
+package com.coara.whiteapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FallbackWhitelistBackendTest {
+    private FakeWhitelistBackend primary;
+    private FakeWhitelistBackend fallback;
+
+    @Before
+    public void setUp() {
+        primary = new FakeWhitelistBackend();
+        fallback = new FakeWhitelistBackend();
+        primary.user.add("com.example.primary");
+        fallback.user.add("com.example.fallback");
+        primary.installed.add("com.example.a");
+        fallback.installed.add("com.example.a");
+    }
+
+    @Test
+    public void queriesPrimaryWhileItWorks() throws IOException {
+        WhitelistBackend backend = new FallbackWhitelistBackend(primary, fallback);
+        Set<String> system = new HashSet<String>();
+        Set<String> user = new HashSet<String>();
+        backend.query(system, user);
+        assertEquals(Collections.singleton("com.example.primary"), user);
+        assertEquals(0, fallback.queries);
+    }
+
+    @Test
+    public void failedQuerySwitchesToFallbackForGood() throws IOException {
+        WhitelistBackend backend = new FallbackWhitelistBackend(primary, fallback);
+        primary.failQueries = true;
+        Set<String> system = new HashSet<String>();
+        Set<String> user = new HashSet<String>();
+        backend.query(system, user);
+        assertEquals(Collections.singleton("com.example.fallback"), user);
+        primary.failQueries = false;
+        user.clear();
+        backend.query(system, user);
+        assertEquals(Collections.singleton("com.example.fallback"), user);
+        assertEquals(1, primary.queries);
+    }
+
+    @Test
+    public void failedUpdateIsRetriedOnFallback() throws IOException {
+        WhitelistBackend backend = new FallbackWhitelistBackend(primary, fallback);
+        primary.failUpdates = true;
+        backend.update(Arrays.asList("com.example.a"), Collections.<String>emptyList());
+        assertTrue(fallback.user.contains("com.example.a"));
+        backend.update(Collections.<String>emptyList(), Arrays.asList("com.example.a"));
+        assertEquals(1, primary.updates);
+        assertEquals(2, fallback.updates);
+    }
+
+    @Test
+    public void queryOnlyPrimaryNeverSeesUpdates() throws IOException {
+        WhitelistBackend backend = new FallbackWhitelistBackend(primary, fallback, false);
+        backend.update(Arrays.asList("com.example.a"), Collections.<String>emptyList());
+        assertEquals(0, primary.updates);
+        assertTrue(fallback.user.contains("com.example.a"));
+        Set<String> user = new HashSet<String>();
+        backend.query(new HashSet<String>(), user);
+        assertTrue(user.contains("com.example.primary"));
+    }
+}
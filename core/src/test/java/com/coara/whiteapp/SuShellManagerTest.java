@@ -0,0 +1,97 @@
+package com.coara.whiteapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Runs the shell manager against a plain /bin/sh standing in for su. */
+public class SuShellManagerTest {
+    private SuShellManager shell;
+
+    @Before
+    public void setUp() {
+        shell = new SuShellManager("/bin/sh");
+        assertTrue(shell.start());
+    }
+
+    @After
+    public void tearDown() {
+        shell.stop();
+    }
+
+    @Test
+    public void runReturnsOutput() {
+        SuShellManager.Result r = shell.run("echo hello; echo world", 2000);
+        assertEquals(SuShellManager.Result.SUCCESS, r.status);
+        assertEquals("hello\nworld\n", r.output);
+    }
+
+    @Test
+    public void batchKeepsOutputsApart() {
+        List<SuShellManager.Result> results = shell.runBatch(new String[] { "echo a", "true", "printf 'b\\nc\\n'" }, 2000);
+        assertEquals("a\n", results.get(0).output);
+        assertEquals("", results.get(1).output);
+        assertEquals("b\nc\n", results.get(2).output);
+    }
+
+    /**
+     * 1,000 sequential round trips. The old reader slept 20 ms between
+     * ready() polls, so its median could not drop below that; the event-driven
+     * reader should return as soon as the marker line arrives.
+     */
+    @Test
+    public void thousandShortCommandsRoundTripWithoutPollingDelay() {
+        int n = 1000;
+        long[] nanos = new long[n];
+        for (int i = 0; i < n; i++) {
+            long t0 = System.nanoTime();
+            SuShellManager.Result r = shell.run("echo " + i, 2000);
+            nanos[i] = System.nanoTime() - t0;
+            assertEquals(SuShellManager.Result.SUCCESS, r.status);
+            assertEquals(i + "\n", r.output);
+        }
+        Arrays.sort(nanos);
+        long p50 = nanos[n / 2] / 1000;
+        long p99 = nanos[n * 99 / 100] / 1000;
+        System.out.println("shell round trip over " + n + " commands: p50=" + p50 + "us p99=" + p99 + "us");
+        assertTrue("p50 " + p50 + "us", p50 < 20000);
+    }
+
+    @Test
+    public void stalledCommandTimesOutAndShellRestarts() {
+        long t0 = System.nanoTime();
+        SuShellManager.Result r = shell.run("sleep 30", 300);
+        assertEquals(SuShellManager.Result.TIMEOUT, r.status);
+        assertTrue((System.nanoTime() - t0) / 1000000 < 5000);
+        SuShellManager.Result next = shell.run("echo ok", 2000);
+        assertEquals(SuShellManager.Result.SUCCESS, next.status);
+        assertEquals("ok\n", next.output);
+        assertEquals(1, shell.getRestartCount());
+    }
+
+    @Test
+    public void exitedShellFailsPendingCommandsAndRestarts() {
+        List<SuShellManager.Result> results = shell.runBatch(new String[] { "echo before", "exit 0", "echo after" }, 2000);
+        assertEquals(SuShellManager.Result.SUCCESS, results.get(0).status);
+        assertEquals(SuShellManager.Result.FAILED, results.get(1).status);
+        assertEquals(SuShellManager.Result.FAILED, results.get(2).status);
+        SuShellManager.Result next = shell.run("echo ok", 2000);
+        assertEquals(SuShellManager.Result.SUCCESS, next.status);
+        assertEquals("ok\n", next.output);
+        assertEquals(1, shell.getRestartCount());
+        assertTrue(shell.isAlive());
+    }
+
+    @Test
+    public void unstartableShellFailsWithoutBlocking() {
+        SuShellManager missing = new SuShellManager("/nonexistent/su");
+        SuShellManager.Result r = missing.run("echo ok", 2000);
+        assertEquals(SuShellManager.Result.FAILED, r.status);
+    }
+}
@@ -0,0 +1,216 @@
+package com.coara.whiteapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Concurrent toggles, full syncs and readers against the published whitelist and its journal. */
+public class WhitelistConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int PACKAGES_PER_THREAD = 40;
+    private static final int OPS = 2000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void concurrentTogglesAreNeitherLostNorMisjournaled() throws Exception {
+        File dir = tmp.newFolder();
+        final WhitelistState state = new WhitelistState();
+        final WhitelistJournal journal = new WhitelistJournal(new File(dir, "w.txt"), new File(dir, "w.journal"), 64);
+        journal.load();
+        final List<Set<String>> expected = new ArrayList<Set<String>>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            final Set<String> mine = new HashSet<String>();
+            expected.add(mine);
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random rnd = new Random(id);
+                    try {
+                        start.await();
+                        for (int i = 0; i < OPS; i++) {
+                            String pkg = "com.example.t" + id + ".p" + rnd.nextInt(PACKAGES_PER_THREAD);
+                            boolean add = rnd.nextBoolean();
+                            Set<String> changed = state.change(Collections.singletonList(pkg), add);
+                            Set<String> none = Collections.emptySet();
+                            journal.append(add ? changed : none, add ? none : changed);
+                            if (add) {
+                                assertEquals(!mine.contains(pkg), changed.contains(pkg));
+                                mine.add(pkg);
+                            } else {
+                                assertEquals(mine.contains(pkg), changed.contains(pkg));
+                                mine.remove(pkg);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        for (Thread t : threads) t.start();
+        start.countDown();
+        for (Thread t : threads) t.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        Set<String> all = new HashSet<String>();
+        for (Set<String> mine : expected) all.addAll(mine);
+        assertEquals(all, state.get());
+        WhitelistJournal reopened = new WhitelistJournal(new File(dir, "w.txt"), new File(dir, "w.journal"), 64);
+        assertEquals(all, reopened.load());
+    }
+
+    @Test
+    public void readersOnlySeeWholeSnapshotsDuringSyncs() throws Exception {
+        final Set<String> a = new HashSet<String>();
+        final Set<String> b = new HashSet<String>();
+        for (int i = 0; i < 200; i++) {
+            a.add("com.example.a" + i);
+            b.add("com.example.b" + i);
+        }
+        final WhitelistState state = new WhitelistState();
+        state.replace(a, new HashSet<String>(), new HashSet<String>());
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Set<String> mirror = new HashSet<String>(a);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < OPS; i++) {
+                        Set<String> added = new HashSet<String>();
+                        Set<String> removed = new HashSet<String>();
+                        state.replace(i % 2 == 0 ? b : a, added, removed);
+                        mirror.addAll(added);
+                        mirror.removeAll(removed);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.set(true);
+                }
+            }
+        });
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (!done.get()) {
+                            Set<String> seen = state.get();
+                            int fromA = 0;
+                            int fromB = 0;
+                            for (String pkg : seen) {
+                                if (a.contains(pkg)) fromA++;
+                                if (b.contains(pkg)) fromB++;
+                            }
+                            assertTrue((fromA == 200 && fromB == 0) || (fromA == 0 && fromB == 200));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        for (Thread t : readers) t.start();
+        writer.start();
+        writer.join();
+        for (Thread t : readers) t.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        assertEquals(state.get(), mirror);
+    }
+
+    /**
+     * Toggles and full syncs on the same packages. Each toggler owns one
+     * package that the syncs also set and clear. A toggle must never be
+     * applied to a snapshot a sync already replaced, which would bring the
+     * old set back. A toggle with no overlapping sync must stick.
+     */
+    @Test
+    public void togglesRacingSyncsNeitherResurrectOldSnapshotsNorGetLost() throws Exception {
+        final Set<String> a = new HashSet<String>();
+        final Set<String> b = new HashSet<String>();
+        for (int i = 0; i < 200; i++) {
+            a.add("com.example.a" + i);
+            b.add("com.example.b" + i);
+        }
+        final Set<String> owned = new HashSet<String>();
+        for (int t = 0; t < THREADS; t++) owned.add((t % 2 == 0 ? "com.example.a" : "com.example.b") + t);
+        final WhitelistState state = new WhitelistState();
+        final AtomicInteger syncsStarted = new AtomicInteger();
+        final AtomicInteger syncsFinished = new AtomicInteger();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread syncer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    start.await();
+                    for (int i = 0; i < OPS; i++) {
+                        Set<String> all = i % 2 == 0 ? b : a;
+                        syncsStarted.incrementAndGet();
+                        state.replace(all, new HashSet<String>(), new HashSet<String>());
+                        syncsFinished.incrementAndGet();
+                        for (String pkg : state.get()) {
+                            if (!all.contains(pkg)) assertTrue(pkg, owned.contains(pkg));
+                        }
+                        for (String pkg : all) {
+                            if (!state.get().contains(pkg)) assertTrue(pkg, owned.contains(pkg));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.set(true);
+                }
+            }
+        });
+        List<Thread> togglers = new ArrayList<Thread>();
+        for (final String pkg : owned) {
+            togglers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random rnd = new Random(pkg.hashCode());
+                    try {
+                        start.await();
+                        while (!done.get()) {
+                            boolean add = rnd.nextBoolean();
+                            int before = syncsFinished.get();
+                            state.change(Collections.singletonList(pkg), add);
+                            if (syncsStarted.get() == before) assertEquals(pkg, add, state.get().contains(pkg));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        for (Thread t : togglers) t.start();
+        syncer.start();
+        start.countDown();
+        syncer.join();
+        for (Thread t : togglers) t.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+    }
+}
@@ -0,0 +1,52 @@
+package com.coara.whiteapp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WhitelistJournalTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void write(File file, String text) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(text.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            fos.close();
+        }
+    }
+
+    private void assertTornTailRecovered(String journalText, String... before) throws IOException {
+        File dir = tmp.newFolder();
+        File snapshot = new File(dir, "w.txt");
+        File journalFile = new File(dir, "w.journal");
+        write(journalFile, journalText);
+        WhitelistJournal journal = new WhitelistJournal(snapshot, journalFile, 64);
+        assertEquals(new HashSet<String>(Arrays.asList(before)), journal.load());
+        journal.append(Collections.singletonList("com.example.good"), Collections.<String>emptyList());
+        HashSet<String> expected = new HashSet<String>(Arrays.asList(before));
+        expected.add("com.example.good");
+        assertEquals(expected, new WhitelistJournal(snapshot, journalFile, 64).load());
+    }
+
+    @Test
+    public void tornOnlyLineDoesNotSwallowTheNextAppend() throws IOException {
+        assertTornTailRecovered("+com.exa");
+    }
+
+    @Test
+    public void tornLastLineIsDroppedAndEarlierEntriesKept() throws IOException {
+        assertTornTailRecovered("+com.example.a\n+com.example.b\n-com.example.b\n+com.exa", "com.example.a");
+    }
+}
@@ -0,0 +1,32 @@
+package com.coara.whiteapp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class WhitelistParserTest {
+    @Test
+    public void exceptIdleEntriesAreNeitherSystemNorUser() {
+        Set<String> system = new HashSet<String>();
+        Set<String> user = new HashSet<String>();
+        WhitelistParser.parse("system-excidle,com.android.a,1000\n"
+                + "system-excidle,com.android.b,1001\n"
+                + "system,com.android.b,1001\n"
+                + "user,com.example.c,10100\n", system, user);
+        assertEquals(new HashSet<String>(Arrays.asList("com.android.b")), system);
+        assertEquals(new HashSet<String>(Arrays.asList("com.example.c")), user);
+    }
+
+    @Test
+    public void plusLinesAndBareListsAreUserEntries() {
+        Set<String> system = new HashSet<String>();
+        Set<String> user = new HashSet<String>();
+        WhitelistParser.parse("+com.example.a\n[com.example.b, com.example.c]\n", system, user);
+        assertEquals(0, system.size());
+        assertEquals(new HashSet<String>(Arrays.asList("com.example.a", "com.example.b", "com.example.c")), user);
+    }
+}
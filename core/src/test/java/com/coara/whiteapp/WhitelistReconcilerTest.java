@@ -0,0 +1,119 @@
+package com.coara.whiteapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WhitelistReconcilerTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+    private FakeWhitelistBackend backend;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.newFolder();
+        backend = new FakeWhitelistBackend();
+        backend.installed.addAll(Arrays.asList("com.example.a", "com.example.b", "com.example.c"));
+        backend.system.add("com.example.sys");
+        backend.user.add("com.example.a");
+    }
+
+    private WhitelistReconciler reconciler() {
+        DesiredWhitelist desired = new DesiredWhitelist(dir);
+        desired.load(null);
+        return new WhitelistReconciler(backend, desired);
+    }
+
+    private int reconcile(WhitelistReconciler r, Set<String> user) throws IOException {
+        user.clear();
+        return r.reconcile(new HashSet<String>(), user);
+    }
+
+    @Test
+    public void firstPassSeedsFromUserEntriesOnly() throws IOException {
+        WhitelistReconciler r = reconciler();
+        Set<String> user = new HashSet<String>();
+        assertEquals(0, reconcile(r, user));
+        backend.user.clear();
+        backend.system.clear();
+        assertEquals(1, reconcile(r, user));
+        assertEquals(new HashSet<String>(Arrays.asList("com.example.a")), backend.user);
+    }
+
+    @Test
+    public void driftIsSentAsOneBatch() throws IOException {
+        DesiredWhitelist desired = new DesiredWhitelist(dir);
+        desired.load(new HashSet<String>(Arrays.asList("com.example.a", "com.example.b")));
+        desired.record(Arrays.asList("com.example.c"), false);
+        backend.user.add("com.example.c");
+        WhitelistReconciler r = new WhitelistReconciler(backend, desired);
+        Set<String> user = new HashSet<String>();
+        assertEquals(2, reconcile(r, user));
+        assertEquals(1, backend.updates);
+        assertEquals(new HashSet<String>(Arrays.asList("com.example.a", "com.example.b")), user);
+    }
+
+    @Test
+    public void refusedEntriesAreDroppedSoPassesSettle() throws IOException {
+        DesiredWhitelist desired = new DesiredWhitelist(dir);
+        desired.load(new HashSet<String>(Arrays.asList("com.example.a", "com.example.uninstalled")));
+        WhitelistReconciler r = new WhitelistReconciler(backend, desired);
+        Set<String> user = new HashSet<String>();
+        assertEquals(0, reconcile(r, user));
+        assertFalse(user.contains("com.example.uninstalled"));
+        assertEquals(1, backend.updates);
+        for (int i = 0; i < 3; i++) assertEquals(0, reconcile(r, user));
+        assertEquals(1, backend.updates);
+    }
+
+    @Test
+    public void systemExemptEntriesAreNotForcedBack() throws IOException {
+        DesiredWhitelist desired = new DesiredWhitelist(dir);
+        desired.load(new HashSet<String>(Arrays.asList("com.example.a", "com.example.sys")));
+        WhitelistReconciler r = new WhitelistReconciler(backend, desired);
+        Set<String> user = new HashSet<String>();
+        assertEquals(0, reconcile(r, user));
+        backend.system.clear();
+        assertEquals(0, reconcile(r, user));
+        assertEquals(0, backend.updates);
+    }
+
+    @Test
+    public void failedUpdateLeavesDesiredStateForTheNextPass() throws IOException {
+        DesiredWhitelist desired = new DesiredWhitelist(dir);
+        desired.load(new HashSet<String>(Arrays.asList("com.example.a", "com.example.b")));
+        WhitelistReconciler r = new WhitelistReconciler(backend, desired);
+        backend.failUpdates = true;
+        Set<String> user = new HashSet<String>();
+        assertEquals(0, reconcile(r, user));
+        backend.failUpdates = false;
+        assertEquals(1, reconcile(r, user));
+        assertTrue(backend.user.contains("com.example.b"));
+    }
+
+    @Test
+    public void desiredStateSurvivesReload() throws IOException {
+        DesiredWhitelist desired = new DesiredWhitelist(dir);
+        desired.load(new HashSet<String>(Arrays.asList("com.example.a")));
+        desired.record(Arrays.asList("com.example.b"), true);
+        desired.forget(Arrays.asList("com.example.a"));
+        backend.user.clear();
+        WhitelistReconciler r = reconciler();
+        Set<String> user = new HashSet<String>();
+        assertEquals(1, reconcile(r, user));
+        assertEquals(new HashSet<String>(Arrays.asList("com.example.b")), backend.user);
+    }
+}